@@ -0,0 +1,100 @@
+package com.cheng.lox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * 以源代码内容哈希为键的磁盘 AST 缓存
+ * 每个条目是一个文件，文件名为 SHA-256（源代码字节 + 影响解析结果的选项），内容为 AstCodec 的编码，
+ * 源代码不变时可以跳过词法分析和语法分析，直接解码出 AST
+ *
+ * 缓存只是加速手段：读取失败或内容损坏时当作未命中，写入失败时忽略
+ */
+final class AstCache {
+    /**
+     * 缓存目录
+     */
+    private final Path directory;
+
+    /**
+     * 构造函数
+     *
+     * @param directory 缓存目录（不存在时在第一次写入时创建）
+     */
+    AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 计算缓存键
+     *
+     * @param source  源代码的字节视图
+     * @param recover 是否为错误恢复模式（解析结果不同）
+     * @return 十六进制的 SHA-256
+     */
+    static String key(ByteSource source, boolean recover) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // 每个 Java 平台都必须支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+        digest.update((byte) (recover ? 1 : 0));
+        source.digest(digest);
+
+        StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 读取缓存的 AST
+     *
+     * @param key 缓存键
+     * @return 表达式列表，未命中时返回 null
+     */
+    List<Expr> load(String key) {
+        try {
+            return AstCodec.decode(Files.readAllBytes(directory.resolve(key)));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            // 读取失败或条目损坏：重新解析，之后的 store 会覆盖它
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存
+     * 先写临时文件再原子地改名，并发运行的进程不会读到写了一半的条目
+     *
+     * @param key         缓存键
+     * @param expressions 解析成功的表达式
+     */
+    void store(String key, List<Expr> expressions) {
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, AstCodec.encode(expressions));
+            Files.move(temp, directory.resolve(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // 临时文件留在缓存目录中，不影响结果
+                }
+            }
+        }
+    }
+}
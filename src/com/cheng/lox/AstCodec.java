@@ -0,0 +1,348 @@
+package com.cheng.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AST 的二进制编码
+ * 格式：
+ * <pre>
+ * "LOXA" 版本号(1 字节)
+ * 字面量池：数量(varint)，每项为 标记(1 字节) + 内容（数字为 8 字节 IEEE 754，字符串为长度(varint) + UTF-8）
+ * 表达式数量(varint)
+ * 节点流：所有表达式按顺序、每棵树按后序排列，每个节点为 类型(1 字节) + 内容：
+ *   一元、二元运算为 (行号差(zigzag) << 6 | 运算符类型序号)(varint)，字面量为池中的下标(varint)
+ * </pre>
+ * 后序排列时子节点总在父节点之前，解码只需一个栈，不用记录子节点的位置，也不需要表达式之间的分隔
+ */
+final class AstCodec {
+    private static final byte[] MAGIC = {'L', 'O', 'X', 'A'};
+    private static final int VERSION = 1;
+
+    private static final byte UNARY = 0;
+    private static final byte BINARY = 1;
+    private static final byte GROUPING = 2;
+    private static final byte LITERAL = 3;
+    private static final byte TERNARY = 4;
+    /**
+     * 各类节点的子节点数
+     */
+    private static final int[] ARITY = {1, 2, 1, 0, 3};
+
+    private static final byte NULL_VALUE = 0;
+    private static final byte FALSE_VALUE = 1;
+    private static final byte TRUE_VALUE = 2;
+    private static final byte NUMBER_VALUE = 3;
+    private static final byte STRING_VALUE = 4;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private AstCodec() {
+    }
+
+    /**
+     * 编码表达式列表
+     *
+     * @param expressions 表达式（不能为 null）
+     * @return 编码后的字节
+     */
+    static byte[] encode(List<Expr> expressions) {
+        Encoder encoder = new Encoder();
+        for (Expr expression : expressions) {
+            ExprWalker.walk(expression, encoder);
+        }
+
+        Output out = new Output();
+        out.write(MAGIC, 0, MAGIC.length);
+        out.write(VERSION);
+        out.writeVarint(encoder.pool.size());
+        for (Object value : encoder.pool) {
+            writeLiteral(out, value);
+        }
+        out.writeVarint(expressions.size());
+        encoder.nodes.writeTo(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码为普通的 Expr 树
+     *
+     * @param data 编码后的字节
+     * @return 表达式列表
+     * @throws IllegalArgumentException 数据格式不正确时
+     */
+    static List<Expr> decode(byte[] data) {
+        return decode(data, ExprFactory.OBJECTS);
+    }
+
+    /**
+     * 解码
+     *
+     * @param data    编码后的字节
+     * @param factory AST 节点工厂
+     * @return 表达式列表
+     * @throws IllegalArgumentException 数据格式不正确时
+     */
+    static List<Expr> decode(byte[] data, ExprFactory factory) {
+        Input in = new Input(data);
+        for (byte b : MAGIC) {
+            if (in.read() != b) throw new IllegalArgumentException("Not an encoded AST.");
+        }
+        if (in.read() != VERSION) throw new IllegalArgumentException("Unsupported AST version.");
+
+        Object[] pool = new Object[in.readLength()];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = readLiteral(in);
+        }
+        int count = in.readLength();
+
+        Expr[] stack = new Expr[16];
+        int depth = 0;
+        int line = 0;
+        // Token 不可变，同一行上同类型的运算符共享一个对象
+        Token[] operators = new Token[TYPES.length];
+        while (!in.atEnd()) {
+            byte kind = (byte) in.read();
+            if (kind < UNARY || kind > TERNARY) {
+                throw new IllegalArgumentException("Unknown node kind: " + kind);
+            }
+            if (depth < ARITY[kind]) throw new IllegalArgumentException("Malformed node stream.");
+
+            Expr expr;
+            switch (kind) {
+                case UNARY:
+                case BINARY: {
+                    long packed = in.readVarint();
+                    int ordinal = (int) (packed & 0x3f);
+                    if (ordinal >= TYPES.length) throw new IllegalArgumentException("Unknown operator.");
+                    TokenType type = TYPES[ordinal];
+                    line += (int) ((packed >>> 7) ^ -((packed >>> 6) & 1));
+                    Token operator = operators[ordinal];
+                    if (operator == null || operator.line != line) {
+                        operator = new Token(type, TokenBuffer.fixedLexeme(type), null, line);
+                        operators[ordinal] = operator;
+                    }
+                    if (kind == UNARY) {
+                        expr = factory.unary(operator, stack[--depth]);
+                    } else {
+                        depth -= 2;
+                        expr = factory.binary(stack[depth], operator, stack[depth + 1]);
+                    }
+                    break;
+                }
+                case GROUPING:
+                    expr = factory.grouping(stack[--depth]);
+                    break;
+                case LITERAL: {
+                    long index = in.readVarint();
+                    if (index >= pool.length) throw new IllegalArgumentException("Unknown literal.");
+                    expr = factory.literal(pool[(int) index]);
+                    break;
+                }
+                default:
+                    depth -= 3;
+                    expr = factory.ternary(stack[depth], stack[depth + 1], stack[depth + 2]);
+                    break;
+            }
+
+            if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+            stack[depth++] = expr;
+        }
+
+        if (depth != count) throw new IllegalArgumentException("Malformed node stream.");
+        List<Expr> expressions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            expressions.add(stack[i]);
+        }
+        return expressions;
+    }
+
+    /**
+     * 写入一个字面量池项
+     */
+    private static void writeLiteral(Output out, Object value) {
+        if (value == null) {
+            out.write(NULL_VALUE);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE_VALUE : FALSE_VALUE);
+        } else if (value instanceof Double) {
+            out.write(NUMBER_VALUE);
+            long bits = Double.doubleToRawLongBits((Double) value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >>> shift));
+            }
+        } else if (value instanceof String) {
+            out.write(STRING_VALUE);
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeVarint(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        } else {
+            throw new IllegalArgumentException("Unsupported literal: " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * 读取一个字面量池项
+     */
+    private static Object readLiteral(Input in) {
+        int tag = in.read();
+        switch (tag) {
+            case NULL_VALUE:
+                return null;
+            case FALSE_VALUE:
+                return false;
+            case TRUE_VALUE:
+                return true;
+            case NUMBER_VALUE: {
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = bits << 8 | in.read();
+                }
+                return Double.longBitsToDouble(bits);
+            }
+            case STRING_VALUE: {
+                int length = in.readLength();
+                return new String(in.readBytes(length), StandardCharsets.UTF_8);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown literal tag: " + tag);
+        }
+    }
+
+    /**
+     * 后序遍历时写出节点流，同时收集字面量池
+     */
+    private static final class Encoder implements ExprWalker.Visitor<Void> {
+        final Output nodes = new Output();
+        final List<Object> pool = new ArrayList<>();
+        /**
+         * 字面量 → 池中的下标（HashMap 允许 null 键；Double 按位比较，0.0 和 -0.0 分开存放）
+         */
+        private final Map<Object, Integer> poolIndex = new HashMap<>();
+        private int line = 0;
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr, Void right) {
+            nodes.write(UNARY);
+            writeOperator(expr.operator);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr, Void left, Void right) {
+            nodes.write(BINARY);
+            writeOperator(expr.operator);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr, Void expression) {
+            nodes.write(GROUPING);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            Integer index = poolIndex.get(expr.value);
+            if (index == null) {
+                index = pool.size();
+                pool.add(expr.value);
+                poolIndex.put(expr.value, index);
+            }
+            nodes.write(LITERAL);
+            nodes.writeVarint(index);
+            return null;
+        }
+
+        @Override
+        public Void visitTernaryExpr(Expr.Ternary expr, Void condition, Void exprIfTrue, Void exprIfFalse) {
+            nodes.write(TERNARY);
+            return null;
+        }
+
+        /**
+         * 运算符和行号打包成一个 varint，行号记录与上一个运算符的差值，通常只占 1 字节
+         */
+        private void writeOperator(Token operator) {
+            long delta = (long) operator.line - line;
+            line = operator.line;
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            nodes.writeVarint(zigzag << 6 | operator.type.ordinal());
+        }
+    }
+
+    /**
+     * 可以直接写 varint 的字节输出
+     */
+    private static final class Output extends ByteArrayOutputStream {
+        Output() {
+            super(256);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeTo(Output out) {
+            out.write(buf, 0, count);
+        }
+    }
+
+    /**
+     * 字节输入
+     */
+    private static final class Input {
+        private final byte[] data;
+        private int position = 0;
+
+        Input(byte[] data) {
+            this.data = data;
+        }
+
+        boolean atEnd() {
+            return position >= data.length;
+        }
+
+        int read() {
+            if (position >= data.length) throw new IllegalArgumentException("Truncated AST data.");
+            return data[position++] & 0xff;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("Malformed varint.");
+        }
+
+        /**
+         * 读取长度或数量，不能超过剩余的字节数（每项至少占 1 字节）
+         */
+        int readLength() {
+            long value = readVarint();
+            if (value > data.length - position) throw new IllegalArgumentException("Truncated AST data.");
+            return (int) value;
+        }
+
+        byte[] readBytes(int length) {
+            if (length < 0 || length > data.length - position) {
+                throw new IllegalArgumentException("Truncated AST data.");
+            }
+            byte[] bytes = Arrays.copyOfRange(data, position, position + length);
+            position += length;
+            return bytes;
+        }
+    }
+}
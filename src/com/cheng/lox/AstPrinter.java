@@ -1,11 +1,29 @@
 package com.cheng.lox;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 /**
  * AST（抽象语法树）打印器
  * 实现了访问者模式，用于将表达式树转换为可读的字符串表示形式
  * 输出格式为带括号的前缀表示法，便于调试和理解表达式结构
+ *
+ * 访问节点时只输出节点本身，子节点和分隔符压入显式栈稍后输出，
+ * 所有内容按顺序直接写入调用者提供的 Appendable，不产生中间字符串，
+ * 输出时间与树的大小成线性关系，嵌套再深也不会栈溢出
  */
-class AstPrinter implements Expr.Visitor<String> {
+class AstPrinter implements Expr.Visitor<Void> {
+    /**
+     * 当前的输出目标
+     */
+    private Appendable out;
+    /**
+     * 待输出的内容：Expr 或 String
+     */
+    private final Deque<Object> pending = new ArrayDeque<>();
+
     /**
      * 主方法（测试用）
      * 用于测试表达式打印功能
@@ -30,82 +48,131 @@ class AstPrinter implements Expr.Visitor<String> {
      * @return 表达式的字符串表示（前缀表示法）
      */
     String print(Expr expr) {
-        return expr.accept(this);
+        StringBuilder builder = new StringBuilder();
+        try {
+            print(expr, builder);
+        } catch (IOException e) {
+            // StringBuilder 不会抛出 IOException
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 打印表达式到指定的输出
+     *
+     * @param expr 要打印的表达式
+     * @param out  输出目标（如 StringBuilder 或带缓冲的 Writer）
+     * @throws IOException 写入输出时发生的异常
+     */
+    void print(Expr expr, Appendable out) throws IOException {
+        this.out = out;
+        pending.clear();
+        pending.push(expr);
+        try {
+            while (!pending.isEmpty()) {
+                Object next = pending.pop();
+                if (next instanceof Expr) {
+                    ((Expr) next).accept(this);
+                } else {
+                    append((String) next);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            this.out = null;
+        }
     }
 
     /**
      * 访问一元表达式
      *
      * @param expr 一元表达式对象
-     * @return 格式化后的字符串表示
+     * @return null
      */
     @Override
-    public String visitUnaryExpr(Expr.Unary expr) {
-        return parenthesize(expr.operator.lexeme, expr.right);
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        parenthesize(expr.operator.lexeme, expr.right);
+        return null;
     }
 
     /**
      * 访问二元表达式
      *
      * @param expr 二元表达式对象
-     * @return 格式化后的字符串表示
+     * @return null
      */
     @Override
-    public String visitBinaryExpr(Expr.Binary expr) {
-        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        parenthesize(expr.operator.lexeme, expr.left, expr.right);
+        return null;
     }
 
     /**
      * 访问分组表达式
      *
      * @param expr 分组表达式对象
-     * @return 格式化后的字符串表示
+     * @return null
      */
     @Override
-    public String visitGroupingExpr(Expr.Grouping expr) {
-        return parenthesize("group", expr.expression);
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        parenthesize("group", expr.expression);
+        return null;
     }
 
     /**
      * 访问字面量表达式
      *
      * @param expr 字面量表达式对象
-     * @return 格式化后的字符串表示
+     * @return null
      */
     @Override
-    public String visitLiteralExpr(Expr.Literal expr) {
-        if (expr.value == null) return "null";
-        return expr.value.toString();
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        append(expr.value == null ? "null" : expr.value.toString());
+        return null;
     }
 
     /**
      * 访问三元表达式
      *
      * @param expr 三元表达式对象
-     * @return 格式化后的字符串表示
+     * @return null
      */
     @Override
-    public String visitTernaryExpr(Expr.Ternary expr) {
-        return parenthesize("ternary", expr.condition, expr.exprIfTrue, expr.exprIfFalse);
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        parenthesize("ternary", expr.condition, expr.exprIfTrue, expr.exprIfFalse);
+        return null;
     }
 
     /**
      * 将表达式和名称包装在括号中
+     * 立即输出左括号和名称，子表达式和右括号按相反顺序入栈
      *
      * @param name  操作符或分组名称
      * @param exprs 要包装的表达式列表
-     * @return 格式化后的字符串（前缀表示法）
      */
-    private String parenthesize(String name, Expr... exprs) {
-        StringBuilder builder = new StringBuilder();
-
-        builder.append("(").append(name);
-        for (Expr expr : exprs) {
-            builder.append(" ");
-            builder.append(expr.accept(this));
+    private void parenthesize(String name, Expr... exprs) {
+        append("(");
+        append(name);
+        pending.push(")");
+        for (int i = exprs.length - 1; i >= 0; i--) {
+            pending.push(exprs[i]);
+            pending.push(" ");
         }
-        builder.append(")");
+    }
 
-        return builder.toString();
+    /**
+     * 写入输出
+     * 访问者方法不能抛出受检异常，先包装成 UncheckedIOException，在 print 中还原
+     *
+     * @param text 要写入的文本
+     */
+    private void append(String text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
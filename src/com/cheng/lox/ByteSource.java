@@ -0,0 +1,264 @@
+package com.cheng.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * 基于字节缓冲区的源代码视图
+ * 把每个字节当作一个字符交给 Scanner，不做整体解码也不做整体拷贝
+ * 只适用于 ASCII 兼容的编码，取文本（toString）时按 UTF-8 解码
+ * UTF-8 源代码中非 ASCII 字符的每个字节都不小于 0x80，不会被当成换行、引号等结构字符，
+ * 因此扫描可以逐字节进行，只有字符串字面量的内容需要解码（见 decodeUtf8）
+ */
+final class ByteSource implements CharSequence {
+    /**
+     * 底层字节缓冲区（通常是内存映射的文件）
+     */
+    private final ByteBuffer bytes;
+    /**
+     * 视图在缓冲区中的起始位置
+     */
+    private final int offset;
+    /**
+     * 视图长度
+     */
+    private final int length;
+
+    /**
+     * 构造方法
+     *
+     * @param bytes 字节缓冲区，视图覆盖 [0, limit)
+     */
+    ByteSource(ByteBuffer bytes) {
+        this(bytes, 0, bytes.limit());
+    }
+
+    private ByteSource(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * 以只读方式内存映射文件
+     *
+     * @param path 文件路径
+     * @return 文件的字节视图
+     * @throws IOException 文件无法读取或超过 2GB 时
+     */
+    static ByteSource map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Source file too large: " + path);
+            }
+            // 映射在通道关闭后依然有效
+            return new ByteSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * 把视图中的字节送入摘要计算，不拷贝内容
+     *
+     * @param digest 摘要
+     */
+    void digest(MessageDigest digest) {
+        ByteBuffer view = bytes.duplicate();
+        view.limit(offset + length).position(offset);
+        digest.update(view);
+    }
+
+    /**
+     * 检查内容是否全部是 ASCII 字符
+     * 只有纯 ASCII 时，逐字节读取的结果才和按字符解码一致
+     *
+     * @return 是否为纯 ASCII
+     */
+    boolean isAscii() {
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(offset + i) < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 按指定字符集整体解码（非 ASCII 时的回退路径）
+     *
+     * @param charset 字符集
+     * @return 解码后的字符串
+     */
+    String decode(Charset charset) {
+        byte[] chunk = new byte[length];
+        bytes.get(offset, chunk);
+        return new String(chunk, charset);
+    }
+
+    /**
+     * 按指定字符集延迟解码
+     * 返回的视图在遇到第一个非 ASCII 字节之前逐字节读取，遇到之后才把剩余部分整体解码，
+     * 纯 ASCII 的文件不需要在扫描前先检查一遍全部内容
+     *
+     * 只适用于从前往后顺序读取的扫描器（Scanner、DfaScanner），不能跨线程使用
+     *
+     * @param charset 与 ASCII 兼容的字符集
+     * @return 解码后的字符视图
+     */
+    CharSequence decodeLazily(Charset charset) {
+        return new LazyDecoded(bytes, offset, length, charset);
+    }
+
+    /**
+     * 找到从 index 开始的 UTF-8 字符的结束位置（跳过后续字节）
+     *
+     * @param index 首字节位置
+     * @return 字符结束位置
+     */
+    int charEnd(int index) {
+        int end = index + 1;
+        while (end < length && (bytes.get(offset + end) & 0xC0) == 0x80) end++;
+        return end;
+    }
+
+    /**
+     * 把逐字节读出的文本（每个 char 对应一个字节）按 UTF-8 解码
+     * 纯 ASCII 时直接返回
+     *
+     * @param text 逐字节读出的文本
+     * @return 解码后的字符串
+     */
+    static String decodeUtf8(String text) {
+        int length = text.length();
+        int i = 0;
+        while (i < length && text.charAt(i) < 0x80) i++;
+        if (i == length) return text;
+
+        byte[] chunk = new byte[length];
+        for (int j = 0; j < length; j++) {
+            chunk[j] = (byte) text.charAt(j);
+        }
+        return new String(chunk, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteSource(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return decode(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 延迟解码的字符视图（见 decodeLazily）
+     *
+     * 检查总是比读取的位置超前至少 AHEAD 个字节，扫描器每次只比上次多读一两个字符，
+     * 因此第一个非 ASCII 字节一定在所有已经读过的位置之后，之前的位置逐字节读取与解码的结果相同；
+     * 找到它之后长度变为前缀长度加上解码后剩余部分的长度，扫描器每次读取前都会重新取 length()
+     */
+    private static final class LazyDecoded implements CharSequence {
+        /**
+         * 检查需要超前于读取位置的字节数
+         */
+        private static final int AHEAD = 16;
+        /**
+         * 每次向前检查的字节数
+         */
+        private static final int BLOCK = 4096;
+
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+        private final Charset charset;
+        /**
+         * 已经确认是 ASCII 的前缀长度
+         */
+        private int checked = 0;
+        /**
+         * 小于它的位置可以直接读取字节，不需要再检查
+         */
+        private int safe = 0;
+        /**
+         * 第一个非 ASCII 字节的位置，还没有遇到时为 -1
+         */
+        private int split = -1;
+        /**
+         * 从 split 开始的剩余部分解码后的内容
+         */
+        private String tail;
+
+        LazyDecoded(ByteBuffer bytes, int offset, int length, Charset charset) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+            this.charset = charset;
+        }
+
+        @Override
+        public int length() {
+            return split < 0 ? length : split + tail.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < safe) return (char) bytes.get(offset + index);
+            if (split < 0) check(index + AHEAD + BLOCK);
+            if (split < 0 || index < split) return (char) bytes.get(offset + index);
+            return tail.charAt(index - split);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (end <= safe) {
+                byte[] chunk = new byte[end - start];
+                bytes.get(offset + start, chunk);
+                return new String(chunk, StandardCharsets.US_ASCII);
+            }
+            StringBuilder text = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                text.append(charAt(i));
+            }
+            return text.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+
+        /**
+         * 把确认为 ASCII 的前缀延长到 to，遇到非 ASCII 字节时解码剩余部分
+         */
+        private void check(int to) {
+            int end = Math.min(length, to);
+            while (checked < end) {
+                if (bytes.get(offset + checked) < 0) {
+                    split = checked;
+                    safe = split;
+                    byte[] rest = new byte[length - split];
+                    bytes.get(offset + split, rest);
+                    tail = new String(rest, charset);
+                    return;
+                }
+                checked++;
+            }
+            safe = checked == length ? length : checked - AHEAD;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.cheng.lox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字节码编译器
+ * 把表达式树编译为 Chunk：操作数先入栈，运算符指令在后；
+ * 三元表达式编译为 条件、OP_JUMP_IF_FALSE、真分支、OP_JUMP、假分支，跳转目标在分支编译完后回填
+ *
+ * 与 AstPrinter 一样用显式栈代替递归，栈中放待编译的节点和节点编译完后要做的动作，
+ * 嵌套再深也不会栈溢出
+ */
+final class BytecodeCompiler implements Expr.Visitor<Void> {
+    /**
+     * 条件编译完：发出 OP_JUMP_IF_FALSE
+     */
+    private static final Object THEN = new Object();
+    /**
+     * 真分支编译完：发出 OP_JUMP，回填 OP_JUMP_IF_FALSE
+     */
+    private static final Object ELSE = new Object();
+    /**
+     * 假分支编译完：回填 OP_JUMP
+     */
+    private static final Object END = new Object();
+
+    /**
+     * 待处理的内容：Expr、Operation 或上面的动作
+     */
+    private final Deque<Object> pending = new ArrayDeque<>();
+    /**
+     * 待回填的跳转指令的位置
+     */
+    private int[] patches = new int[8];
+    private int patchCount = 0;
+
+    private byte[] code = new byte[64];
+    private int count = 0;
+
+    private long[] numbers = new long[8];
+    private int numberCount = 0;
+    /**
+     * 数字的 Value 表示 → 下标（按位比较，0.0 和 -0.0 分开存放）
+     */
+    private final Map<Long, Integer> numberIndex = new HashMap<>();
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    private int[] lineOffsets = new int[8];
+    private int[] lines = new int[8];
+    private int lineCount = 0;
+
+    private int stackDepth = 0;
+    private int maxStack = 0;
+
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * 编译表达式
+     *
+     * @param expr 表达式
+     * @return 字节码块
+     */
+    static Chunk compile(Expr expr) {
+        return new BytecodeCompiler().compileChunk(expr);
+    }
+
+    private Chunk compileChunk(Expr root) {
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof Expr) {
+                ((Expr) next).accept(this);
+            } else if (next instanceof Operation) {
+                Operation operation = (Operation) next;
+                emitOperator(operation.opcode, operation.line, operation.arity);
+            } else if (next == THEN) {
+                stackDepth--;
+                pushPatch(emitJump(Chunk.OP_JUMP_IF_FALSE));
+            } else if (next == ELSE) {
+                // 两个分支只会执行一个，真分支的值不计入假分支的栈深度
+                stackDepth--;
+                int jump = emitJump(Chunk.OP_JUMP);
+                patch(popPatch());
+                pushPatch(jump);
+            } else {
+                patch(popPatch());
+            }
+        }
+        emit(Chunk.OP_RETURN);
+
+        return new Chunk(Arrays.copyOf(code, count),
+                Arrays.copyOf(numbers, numberCount),
+                constants.toArray(),
+                Arrays.copyOf(lineOffsets, lineCount),
+                Arrays.copyOf(lines, lineCount),
+                maxStack);
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        byte opcode = expr.operator.type == TokenType.MINUS ? Chunk.OP_NEGATE : Chunk.OP_NOT;
+        pending.push(new Operation(opcode, expr.operator.line, 1));
+        pending.push(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        pending.push(new Operation(binaryOpcode(expr.operator), expr.operator.line, 2));
+        pending.push(expr.right);
+        pending.push(expr.left);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        pending.push(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        if (value == null) {
+            emit(Chunk.OP_NIL);
+        } else if (value instanceof Boolean) {
+            emit((Boolean) value ? Chunk.OP_TRUE : Chunk.OP_FALSE);
+        } else if (value instanceof Double) {
+            emitIndex(Chunk.OP_NUMBER, Chunk.OP_NUMBER_LONG, numberConstant((Double) value));
+        } else {
+            emitIndex(Chunk.OP_CONSTANT, Chunk.OP_CONSTANT_LONG, constant(value));
+        }
+        push();
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        pending.push(END);
+        pending.push(expr.exprIfFalse);
+        pending.push(ELSE);
+        pending.push(expr.exprIfTrue);
+        pending.push(THEN);
+        pending.push(expr.condition);
+        return null;
+    }
+
+    /**
+     * 二元运算符对应的操作码
+     */
+    private static byte binaryOpcode(Token operator) {
+        switch (operator.type) {
+            case PLUS:
+                return Chunk.OP_ADD;
+            case MINUS:
+                return Chunk.OP_SUBTRACT;
+            case STAR:
+                return Chunk.OP_MULTIPLY;
+            case SLASH:
+                return Chunk.OP_DIVIDE;
+            case GREATER:
+                return Chunk.OP_GREATER;
+            case GREATER_EQUAL:
+                return Chunk.OP_GREATER_EQUAL;
+            case LESS:
+                return Chunk.OP_LESS;
+            case LESS_EQUAL:
+                return Chunk.OP_LESS_EQUAL;
+            case EQUAL_EQUAL:
+                return Chunk.OP_EQUAL;
+            case BANG_EQUAL:
+                return Chunk.OP_NOT_EQUAL;
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + operator.type);
+        }
+    }
+
+    private int numberConstant(double number) {
+        long value = Value.number(number);
+        Integer index = numberIndex.get(value);
+        if (index == null) {
+            index = numberCount;
+            if (numberCount == numbers.length) numbers = Arrays.copyOf(numbers, numberCount * 2);
+            numbers[numberCount++] = value;
+            numberIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private int constant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * 发出带常量下标的指令，下标超过 1 字节时使用 4 字节的版本
+     */
+    private void emitIndex(byte opcode, byte longOpcode, int index) {
+        if (index <= 0xff) {
+            emit(opcode);
+            emit((byte) index);
+        } else {
+            emit(longOpcode);
+            emitInt(index);
+        }
+    }
+
+    /**
+     * 发出运算符指令并记录行号
+     *
+     * @param arity 弹出的操作数个数（结果压回一个）
+     */
+    private void emitOperator(byte opcode, int line, int arity) {
+        if (lineCount == 0 || lines[lineCount - 1] != line) {
+            if (lineCount == lines.length) {
+                lineOffsets = Arrays.copyOf(lineOffsets, lineCount * 2);
+                lines = Arrays.copyOf(lines, lineCount * 2);
+            }
+            lineOffsets[lineCount] = count;
+            lines[lineCount] = line;
+            lineCount++;
+        }
+        emit(opcode);
+        stackDepth -= arity - 1;
+    }
+
+    /**
+     * 发出跳转指令，目标先留空
+     *
+     * @return 目标操作数的位置
+     */
+    private int emitJump(byte opcode) {
+        emit(opcode);
+        int operand = count;
+        emitInt(0);
+        return operand;
+    }
+
+    /**
+     * 把跳转目标回填为当前位置
+     */
+    private void patch(int operand) {
+        int target = count;
+        code[operand] = (byte) (target >>> 24);
+        code[operand + 1] = (byte) (target >>> 16);
+        code[operand + 2] = (byte) (target >>> 8);
+        code[operand + 3] = (byte) target;
+    }
+
+    private void emitInt(int value) {
+        emit((byte) (value >>> 24));
+        emit((byte) (value >>> 16));
+        emit((byte) (value >>> 8));
+        emit((byte) value);
+    }
+
+    private void emit(byte b) {
+        if (count == code.length) code = Arrays.copyOf(code, count * 2);
+        code[count++] = b;
+    }
+
+    /**
+     * 记录压入了一个值
+     */
+    private void push() {
+        stackDepth++;
+        if (stackDepth > maxStack) maxStack = stackDepth;
+    }
+
+    private void pushPatch(int operand) {
+        if (patchCount == patches.length) patches = Arrays.copyOf(patches, patchCount * 2);
+        patches[patchCount++] = operand;
+    }
+
+    private int popPatch() {
+        return patches[--patchCount];
+    }
+
+    /**
+     * 子节点编译完后要发出的运算符指令
+     */
+    private static final class Operation {
+        final byte opcode;
+        final int line;
+        final int arity;
+
+        Operation(byte opcode, int line, int arity) {
+            this.opcode = opcode;
+            this.line = line;
+            this.arity = arity;
+        }
+    }
+}
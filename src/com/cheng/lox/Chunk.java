@@ -0,0 +1,95 @@
+package com.cheng.lox;
+
+/**
+ * 字节码块
+ * 由 BytecodeCompiler 从一个表达式编译而来，交给 VM 执行
+ *
+ * 指令为 1 字节操作码加上操作数：常量下标为 1 字节（_LONG 版本为 4 字节），跳转目标为 4 字节绝对位置，
+ * 多字节操作数按大端序存放。
+ * 数字常量单独放在 long[] 中，已经按 Value 做了 NaN-boxing，VM 直接压栈
+ *
+ * 只有运算符指令可能出错，行号表只为它们记录行号，并且只在行号变化时记录一项
+ */
+final class Chunk {
+    /** 压入数字常量：下标(1) */
+    static final byte OP_NUMBER = 0;
+    /** 压入数字常量：下标(4) */
+    static final byte OP_NUMBER_LONG = 1;
+    /** 压入其他常量（字符串）：下标(1) */
+    static final byte OP_CONSTANT = 2;
+    /** 压入其他常量（字符串）：下标(4) */
+    static final byte OP_CONSTANT_LONG = 3;
+    static final byte OP_NIL = 4;
+    static final byte OP_TRUE = 5;
+    static final byte OP_FALSE = 6;
+    static final byte OP_NEGATE = 7;
+    static final byte OP_NOT = 8;
+    static final byte OP_ADD = 9;
+    static final byte OP_SUBTRACT = 10;
+    static final byte OP_MULTIPLY = 11;
+    static final byte OP_DIVIDE = 12;
+    static final byte OP_GREATER = 13;
+    static final byte OP_GREATER_EQUAL = 14;
+    static final byte OP_LESS = 15;
+    static final byte OP_LESS_EQUAL = 16;
+    static final byte OP_EQUAL = 17;
+    static final byte OP_NOT_EQUAL = 18;
+    /** 弹出栈顶，为假时跳转：目标(4) */
+    static final byte OP_JUMP_IF_FALSE = 19;
+    /** 跳转：目标(4) */
+    static final byte OP_JUMP = 20;
+    /** 返回栈顶的值 */
+    static final byte OP_RETURN = 21;
+
+    /**
+     * 指令
+     */
+    final byte[] code;
+    /**
+     * 数字常量池（Value 表示）
+     */
+    final long[] numbers;
+    /**
+     * 其他常量池
+     */
+    final Object[] constants;
+    /**
+     * 行号表：从 lineOffsets[i] 处的指令开始，运算符位于第 lines[i] 行
+     */
+    final int[] lineOffsets;
+    final int[] lines;
+    /**
+     * 执行时需要的最大栈深度
+     */
+    final int maxStack;
+
+    Chunk(byte[] code, long[] numbers, Object[] constants, int[] lineOffsets, int[] lines, int maxStack) {
+        this.code = code;
+        this.numbers = numbers;
+        this.constants = constants;
+        this.lineOffsets = lineOffsets;
+        this.lines = lines;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * 查找指令对应的行号
+     *
+     * @param offset 指令的位置
+     * @return 行号
+     */
+    int line(int offset) {
+        int low = 0;
+        int high = lineOffsets.length - 1;
+        // 找最后一个 lineOffsets[i] <= offset 的项
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (lineOffsets[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return lines.length == 0 ? 0 : lines[low];
+    }
+}
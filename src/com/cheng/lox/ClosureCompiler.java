@@ -0,0 +1,256 @@
+package com.cheng.lox;
+
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 闭包编译器
+ * 把表达式树一次性转换为互相引用的 Java 函数对象，求值时只调用这些对象，
+ * 不再访问 AST，也不再按 operator.type 分派：每种运算符在编译时就选定了各自的 lambda
+ *
+ * 编译时推断子树的类型：只由数字字面量和 "-"、"*"、"/"、"+"、取负组成的子树一定得到数字且不会出错，
+ * 编译为 DoubleSupplier，求值全程不装箱；其他子树编译为 Supplier&lt;Object&gt;，在运行时检查类型。
+ * 比较运算的两边都是数字时直接比较 double，三元表达式的两个分支都是数字时结果也是数字
+ *
+ * 语义与 Interpreter 相同。编译通过 ExprWalker 完成，不会栈溢出；
+ * 求值是闭包之间的递归调用，调用深度与树的高度成正比。编译时同时记录每棵子树的调用深度，
+ * 超过 MAX_DEPTH 时不使用闭包，与 JvmCompiler 一样回退为由 VM 执行字节码，求值时不会栈溢出
+ */
+final class ClosureCompiler implements ExprWalker.Visitor<Object> {
+    /**
+     * 闭包的最大调用深度，解释执行时在 256 KB 的线程栈上也能求值（默认为 1 MB）
+     */
+    static final int MAX_DEPTH = 1000;
+
+    /**
+     * 与 ExprWalker 的结果栈对应：每个已编译子树求值时的调用深度
+     */
+    private int[] depths = new int[16];
+    private int depthCount = 0;
+
+    private ClosureCompiler() {
+    }
+
+    /**
+     * 编译表达式
+     * 表达式嵌套太深时回退为由 VM 执行的字节码，此时返回的对象不是线程安全的
+     *
+     * @param expr 表达式
+     * @return 求值函数，调用时可能抛出 RuntimeError
+     */
+    static Supplier<Object> compile(Expr expr) {
+        ClosureCompiler compiler = new ClosureCompiler();
+        Object body = ExprWalker.walk(expr, compiler);
+        if (compiler.depths[0] + 1 > MAX_DEPTH) {
+            Chunk chunk = BytecodeCompiler.compile(expr);
+            VM vm = new VM();
+            return () -> vm.run(chunk);
+        }
+        return boxed(body);
+    }
+
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr, Object right) {
+        // 数字的操作数在取反时可能还要装箱一层
+        depth(1, 2);
+        if (expr.operator.type == TokenType.BANG) {
+            Supplier<Object> operand = boxed(right);
+            return (Supplier<Object>) () -> !isTruthy(operand.get());
+        }
+
+        if (right instanceof DoubleSupplier) {
+            DoubleSupplier operand = (DoubleSupplier) right;
+            return (DoubleSupplier) () -> -operand.getAsDouble();
+        }
+        @SuppressWarnings("unchecked")
+        Supplier<Object> operand = (Supplier<Object>) right;
+        Token operator = expr.operator;
+        return (Supplier<Object>) () -> {
+            Object value = operand.get();
+            if (!(value instanceof Double)) throw new RuntimeError(operator, "Operand must be a number.");
+            return -(Double) value;
+        };
+    }
+
+    @Override
+    public Object visitBinaryExpr(Expr.Binary expr, Object left, Object right) {
+        depth(2, 2);
+        Token operator = expr.operator;
+        if (left instanceof DoubleSupplier && right instanceof DoubleSupplier) {
+            DoubleSupplier l = (DoubleSupplier) left;
+            DoubleSupplier r = (DoubleSupplier) right;
+            switch (operator.type) {
+                case PLUS:
+                    return (DoubleSupplier) () -> l.getAsDouble() + r.getAsDouble();
+                case MINUS:
+                    return (DoubleSupplier) () -> l.getAsDouble() - r.getAsDouble();
+                case STAR:
+                    return (DoubleSupplier) () -> l.getAsDouble() * r.getAsDouble();
+                case SLASH:
+                    return (DoubleSupplier) () -> l.getAsDouble() / r.getAsDouble();
+                case GREATER:
+                    return (Supplier<Object>) () -> l.getAsDouble() > r.getAsDouble();
+                case GREATER_EQUAL:
+                    return (Supplier<Object>) () -> l.getAsDouble() >= r.getAsDouble();
+                case LESS:
+                    return (Supplier<Object>) () -> l.getAsDouble() < r.getAsDouble();
+                case LESS_EQUAL:
+                    return (Supplier<Object>) () -> l.getAsDouble() <= r.getAsDouble();
+                case EQUAL_EQUAL:
+                    return (Supplier<Object>) () ->
+                            Double.doubleToLongBits(l.getAsDouble()) == Double.doubleToLongBits(r.getAsDouble());
+                case BANG_EQUAL:
+                    return (Supplier<Object>) () ->
+                            Double.doubleToLongBits(l.getAsDouble()) != Double.doubleToLongBits(r.getAsDouble());
+                default:
+                    throw new IllegalArgumentException("Unknown operator: " + operator.type);
+            }
+        }
+
+        Supplier<Object> l = boxed(left);
+        Supplier<Object> r = boxed(right);
+        switch (operator.type) {
+            case PLUS:
+                return (Supplier<Object>) () -> {
+                    Object a = l.get();
+                    Object b = r.get();
+                    if (a instanceof Double && b instanceof Double) return (Double) a + (Double) b;
+                    if (a instanceof String && b instanceof String) return (String) a + b;
+                    throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+                };
+            case MINUS:
+                return (Supplier<Object>) () -> {
+                    Object a = l.get();
+                    Object b = r.get();
+                    checkNumberOperands(operator, a, b);
+                    return (Double) a - (Double) b;
+                };
+            case STAR:
+                return (Supplier<Object>) () -> {
+                    Object a = l.get();
+                    Object b = r.get();
+                    checkNumberOperands(operator, a, b);
+                    return (Double) a * (Double) b;
+                };
+            case SLASH:
+                return (Supplier<Object>) () -> {
+                    Object a = l.get();
+                    Object b = r.get();
+                    checkNumberOperands(operator, a, b);
+                    return (Double) a / (Double) b;
+                };
+            case GREATER:
+                return (Supplier<Object>) () -> {
+                    Object a = l.get();
+                    Object b = r.get();
+                    checkNumberOperands(operator, a, b);
+                    return (Double) a > (Double) b;
+                };
+            case GREATER_EQUAL:
+                return (Supplier<Object>) () -> {
+                    Object a = l.get();
+                    Object b = r.get();
+                    checkNumberOperands(operator, a, b);
+                    return (Double) a >= (Double) b;
+                };
+            case LESS:
+                return (Supplier<Object>) () -> {
+                    Object a = l.get();
+                    Object b = r.get();
+                    checkNumberOperands(operator, a, b);
+                    return (Double) a < (Double) b;
+                };
+            case LESS_EQUAL:
+                return (Supplier<Object>) () -> {
+                    Object a = l.get();
+                    Object b = r.get();
+                    checkNumberOperands(operator, a, b);
+                    return (Double) a <= (Double) b;
+                };
+            case EQUAL_EQUAL:
+                return (Supplier<Object>) () -> isEqual(l.get(), r.get());
+            case BANG_EQUAL:
+                return (Supplier<Object>) () -> !isEqual(l.get(), r.get());
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + operator.type);
+        }
+    }
+
+    @Override
+    public Object visitGroupingExpr(Expr.Grouping expr, Object expression) {
+        return expression;
+    }
+
+    @Override
+    public Object visitLiteralExpr(Expr.Literal expr) {
+        depth(0, 1);
+        Object value = expr.value;
+        if (value instanceof Double) {
+            double number = (Double) value;
+            return (DoubleSupplier) () -> number;
+        }
+        return (Supplier<Object>) () -> value;
+    }
+
+    @Override
+    public Object visitTernaryExpr(Expr.Ternary expr, Object condition, Object exprIfTrue, Object exprIfFalse) {
+        depth(3, 2);
+        Supplier<Object> c = boxed(condition);
+        if (exprIfTrue instanceof DoubleSupplier && exprIfFalse instanceof DoubleSupplier) {
+            DoubleSupplier t = (DoubleSupplier) exprIfTrue;
+            DoubleSupplier f = (DoubleSupplier) exprIfFalse;
+            return (DoubleSupplier) () -> isTruthy(c.get()) ? t.getAsDouble() : f.getAsDouble();
+        }
+        Supplier<Object> t = boxed(exprIfTrue);
+        Supplier<Object> f = boxed(exprIfFalse);
+        return (Supplier<Object>) () -> isTruthy(c.get()) ? t.get() : f.get();
+    }
+
+    /**
+     * 记录新节点的调用深度：取出子节点的深度，加上本节点的闭包（以及操作数外面装箱的一层）
+     * 括号直接返回子节点的闭包，深度不变，不需要记录
+     *
+     * @param children 子节点个数
+     * @param frames   本节点增加的调用层数
+     */
+    private void depth(int children, int frames) {
+        int deepest = 0;
+        for (int i = 0; i < children; i++) {
+            deepest = Math.max(deepest, depths[--depthCount]);
+        }
+        if (depthCount == depths.length) depths = Arrays.copyOf(depths, depthCount * 2);
+        depths[depthCount++] = deepest + frames;
+    }
+
+    /**
+     * 统一为 Supplier&lt;Object&gt;，数字子树在外面包一层装箱
+     */
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> boxed(Object compiled) {
+        if (compiled instanceof DoubleSupplier) {
+            DoubleSupplier number = (DoubleSupplier) compiled;
+            return () -> number.getAsDouble();
+        }
+        return (Supplier<Object>) compiled;
+    }
+
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    /**
+     * 相等判断，与 Interpreter 一致
+     */
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null) return b == null;
+        return a.equals(b);
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        return true;
+    }
+}
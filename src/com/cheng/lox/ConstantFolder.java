@@ -0,0 +1,306 @@
+package com.cheng.lox;
+
+import static com.cheng.lox.TokenType.*;
+
+/**
+ * 常量折叠与代数化简
+ * 在 Parser.parse() 之后对表达式树做一次自底向上的改写：
+ * 字面量之间的一元、二元运算直接求值，条件为常量的三元表达式只保留被选中的分支，
+ * 去掉分组（树的结构已经表达了优先级），并应用不改变结果的恒等式
+ *
+ * 求值规则与 Lox 的运行时语义一致：null 和 false 为假，其余为真；
+ * "+" 只接受两个数字或两个字符串，其余算术和比较运算只接受数字。
+ * 运行时会报错的运算（如 "a" - 1）保持原样，留到运行时报告
+ *
+ * 通过 ExprWalker 后序遍历，各节点收到的是已经化简过的子节点，不会因为嵌套太深而栈溢出
+ */
+final class ConstantFolder implements ExprWalker.Visitor<Expr> {
+    /**
+     * 表示二元运算不能在编译期求值
+     */
+    private static final Object NOT_CONSTANT = new Object();
+    /**
+     * 统计表达式树的节点数
+     */
+    private static final ExprWalker.Visitor<Integer> SIZE = new ExprWalker.Visitor<Integer>() {
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr, Integer right) {
+            return 1 + right;
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr, Integer left, Integer right) {
+            return 1 + left + right;
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr, Integer expression) {
+            return 1 + expression;
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitTernaryExpr(Expr.Ternary expr, Integer condition, Integer exprIfTrue, Integer exprIfFalse) {
+            return 1 + condition + exprIfTrue + exprIfFalse;
+        }
+    };
+
+    /**
+     * 创建新节点所用的工厂
+     */
+    private final ExprFactory factory;
+    /**
+     * 累计消除的节点数
+     */
+    private int eliminated = 0;
+
+    /**
+     * 构造函数
+     */
+    ConstantFolder() {
+        this(ExprFactory.OBJECTS);
+    }
+
+    /**
+     * 构造函数
+     * 化简时按节点类型判断，factory 需要创建普通的 Expr 节点（如 ExprFactory.OBJECTS 或 InterningExprFactory）
+     *
+     * @param factory 创建新节点所用的工厂
+     */
+    ConstantFolder(ExprFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * 化简表达式
+     *
+     * @param expr 表达式
+     * @return 化简后的表达式（没有可化简的部分时返回原对象）
+     */
+    Expr optimize(Expr expr) {
+        Expr result = ExprWalker.walk(expr, this);
+        eliminated += ExprWalker.walk(expr, SIZE) - ExprWalker.walk(result, SIZE);
+        return result;
+    }
+
+    /**
+     * @return 累计消除的节点数（按树中出现的次数计算）
+     */
+    int eliminated() {
+        return eliminated;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr, Expr right) {
+        if (right instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) right).value;
+            switch (expr.operator.type) {
+                case BANG:
+                    return factory.literal(!isTruthy(value));
+                case MINUS:
+                    if (value instanceof Double) return factory.literal(-(double) value);
+                    break;
+                default:
+                    break;
+            }
+        } else if (right instanceof Expr.Unary) {
+            Expr.Unary inner = (Expr.Unary) right;
+            // -(-x) → x，x 一定是数字（否则两种写法都在 x 处报同样的错误）
+            if (expr.operator.type == MINUS && inner.operator.type == MINUS && isNumeric(inner.right)) {
+                return inner.right;
+            }
+            // !!x → x，x 本身已是布尔值时
+            if (expr.operator.type == BANG && inner.operator.type == BANG && isBoolean(inner.right)) {
+                return inner.right;
+            }
+        } else if (right instanceof Expr.Binary && expr.operator.type == BANG) {
+            // !(a == b) → a != b，!(a != b) → a == b
+            Expr.Binary inner = (Expr.Binary) right;
+            TokenType negated = inner.operator.type == EQUAL_EQUAL ? BANG_EQUAL
+                    : inner.operator.type == BANG_EQUAL ? EQUAL_EQUAL : null;
+            if (negated != null) {
+                Token operator = new Token(negated, TokenBuffer.fixedLexeme(negated), null, inner.operator.line);
+                return factory.binary(inner.left, operator, inner.right);
+            }
+        }
+
+        return right == expr.right ? expr : factory.unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr, Expr left, Expr right) {
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            Object value = fold(expr.operator.type, ((Expr.Literal) left).value, ((Expr.Literal) right).value);
+            if (value != NOT_CONSTANT) return factory.literal(value);
+        }
+
+        Expr identity = identity(expr.operator.type, left, right);
+        if (identity != null) return identity;
+
+        if (left == expr.left && right == expr.right) return expr;
+        return factory.binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr, Expr expression) {
+        return expression;
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr, Expr condition, Expr exprIfTrue, Expr exprIfFalse) {
+        if (condition instanceof Expr.Literal) {
+            // 条件为常量时只保留被选中的分支，另一个分支不会被求值
+            return isTruthy(((Expr.Literal) condition).value) ? exprIfTrue : exprIfFalse;
+        }
+
+        if (condition == expr.condition && exprIfTrue == expr.exprIfTrue && exprIfFalse == expr.exprIfFalse) {
+            return expr;
+        }
+        return factory.ternary(condition, exprIfTrue, exprIfFalse);
+    }
+
+    /**
+     * 对两个字面量求值
+     *
+     * @param operator 运算符类型
+     * @param left     左操作数
+     * @param right    右操作数
+     * @return 运算结果，运行时会报错时返回 NOT_CONSTANT
+     */
+    private static Object fold(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case EQUAL_EQUAL:
+                return isEqual(left, right);
+            case BANG_EQUAL:
+                return !isEqual(left, right);
+            case PLUS:
+                if (left instanceof String && right instanceof String) return (String) left + right;
+                break;
+            default:
+                break;
+        }
+
+        if (!(left instanceof Double) || !(right instanceof Double)) return NOT_CONSTANT;
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator) {
+            case PLUS:
+                return a + b;
+            case MINUS:
+                return a - b;
+            case STAR:
+                return a * b;
+            case SLASH:
+                return a / b;
+            case GREATER:
+                return a > b;
+            case GREATER_EQUAL:
+                return a >= b;
+            case LESS:
+                return a < b;
+            case LESS_EQUAL:
+                return a <= b;
+            default:
+                return NOT_CONSTANT;
+        }
+    }
+
+    /**
+     * 应用恒等式，只在一侧是数字字面量、另一侧一定是数字时化简：
+     * x * 1、1 * x、x / 1、x - 0 → x
+     * （x + 0 在 x 为 -0 时结果不同，不化简）
+     *
+     * @param operator 运算符类型
+     * @param left     化简后的左操作数
+     * @param right    化简后的右操作数
+     * @return 化简结果，不适用时返回 null
+     */
+    private static Expr identity(TokenType operator, Expr left, Expr right) {
+        switch (operator) {
+            case STAR:
+                if (isNumber(right, 1) && isNumeric(left)) return left;
+                if (isNumber(left, 1) && isNumeric(right)) return right;
+                return null;
+            case SLASH:
+                return isNumber(right, 1) && isNumeric(left) ? left : null;
+            case MINUS:
+                return isNumber(right, 0) && isNumeric(left) ? left : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 判断表达式是否是值为 value 的数字字面量
+     */
+    private static boolean isNumber(Expr expr, double value) {
+        if (!(expr instanceof Expr.Literal)) return false;
+        Object literal = ((Expr.Literal) expr).value;
+        // 按位比较，区分 0 和 -0
+        return literal instanceof Double && Double.compare((double) literal, value) == 0;
+    }
+
+    /**
+     * 判断表达式的值是否一定是数字（求值不报错时）
+     * 只看节点本身，不深入三元表达式的分支，结果是保守的
+     */
+    private static boolean isNumeric(Expr expr) {
+        if (expr instanceof Expr.Literal) return ((Expr.Literal) expr).value instanceof Double;
+        if (expr instanceof Expr.Unary) return ((Expr.Unary) expr).operator.type == MINUS;
+        if (expr instanceof Expr.Binary) {
+            TokenType type = ((Expr.Binary) expr).operator.type;
+            return type == MINUS || type == STAR || type == SLASH;
+        }
+        return false;
+    }
+
+    /**
+     * 判断表达式的值是否一定是布尔值（求值不报错时）
+     * 只看节点本身，不深入三元表达式的分支，结果是保守的
+     */
+    private static boolean isBoolean(Expr expr) {
+        if (expr instanceof Expr.Literal) return ((Expr.Literal) expr).value instanceof Boolean;
+        if (expr instanceof Expr.Unary) return ((Expr.Unary) expr).operator.type == BANG;
+        if (expr instanceof Expr.Binary) {
+            switch (((Expr.Binary) expr).operator.type) {
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 真值判断：null 和 false 为假，其余为真
+     */
+    private static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        return true;
+    }
+
+    /**
+     * 相等判断
+     */
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+        return a.equals(b);
+    }
+}
@@ -0,0 +1,188 @@
+package com.cheng.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.cheng.lox.DfaTables.*;
+import static com.cheng.lox.TokenType.EOF;
+
+/**
+ * 表驱动的词法分析器
+ * 按 DfaTables（由 com.cheng.tool.GenerateScanner 生成）中的状态转移表逐字符前进，
+ * 取最长匹配，再按规则执行对应的动作，输出与 Scanner 相同的 Token 序列
+ *
+ * 每个字符都要查两次表，空白也按规则逐个匹配，比手写的 Scanner 慢约 10%–20%（见 ScanBench），
+ * 用作由规则生成的对照实现，默认仍使用 Scanner
+ */
+final class DfaScanner implements Lexer {
+    /**
+     * 源代码
+     */
+    private final CharSequence source;
+    /**
+     * 生成的Token缓冲区
+     */
+    private final TokenBuffer tokens;
+    /**
+     * 当前正在扫描的Token的起始位置
+     */
+    private int start = 0;
+    /**
+     * 当前扫描位置
+     */
+    private int current = 0;
+    /**
+     * 当前行号
+     */
+    private int line = 1;
+    /**
+     * 延迟报告的词法错误，为 null 时直接通过 Lox.error 报告
+     */
+    private List<Scanner.LexError> deferredErrors;
+
+    /**
+     * 构造函数
+     *
+     * @param source 源代码
+     */
+    DfaScanner(CharSequence source) {
+        this.source = source;
+        this.tokens = new TokenBuffer(source);
+    }
+
+    @Override
+    public TokenBuffer scanBuffer() {
+        while (current < source.length()) {
+            start = current;
+            scanToken();
+        }
+
+        tokens.add(EOF, current, 0, line, null);
+        return tokens;
+    }
+
+    @Override
+    public Token nextToken() {
+        tokens.clear();
+        while (tokens.size() == 0 && current < source.length()) {
+            start = current;
+            scanToken();
+        }
+
+        if (tokens.size() == 0) {
+            tokens.add(EOF, current, 0, line, null);
+        }
+        return tokens.token(0);
+    }
+
+    @Override
+    public List<Scanner.LexError> deferErrors() {
+        if (deferredErrors == null) deferredErrors = new ArrayList<>();
+        return deferredErrors;
+    }
+
+    /**
+     * 扫描单个Token
+     * 一直前进到没有转移为止，回退到最后一个接受状态
+     */
+    private void scanToken() {
+        int state = 0;
+        int rule = -1;
+        int end = start;
+        for (int pos = start; pos < source.length(); ) {
+            char c = source.charAt(pos);
+            state = TRANSITIONS[state * CLASS_COUNT + (c < 128 ? CHAR_CLASSES[c] : NON_ASCII_CLASS)];
+            if (state < 0) break;
+            pos++;
+            if (ACCEPT[state] >= 0) {
+                rule = ACCEPT[state];
+                end = pos;
+            }
+        }
+
+        if (rule < 0) {
+            current = start + 1;
+            if (source.charAt(start) >= 0x80 && source instanceof ByteSource) {
+                // 字节视图中的非 ASCII 字符：跳过整个 UTF-8 编码，按解码后的字符报告
+                current = ((ByteSource) source).charEnd(start);
+            }
+            error("Unexpected character." + source.subSequence(start, current));
+            return;
+        }
+
+        current = end;
+        switch (RULE_ACTIONS[rule]) {
+            case TOKEN:
+                tokens.add(RULE_TYPES[rule], start, current - start, line, null);
+                break;
+            case NEWLINE:
+                line++;
+                break;
+            case STRING:
+                String value = string(start + 1, current - 1);
+                tokens.add(RULE_TYPES[rule], start, current - start, line, value);
+                break;
+            case NUMBER:
+                Double number = NumberLiteral.parse(source, start, current);
+                tokens.add(RULE_TYPES[rule], start, current - start, line, number);
+                break;
+            case UNEXPECTED:
+                error("Unexpected character: '" + source.charAt(start) + "'");
+                break;
+            case UNTERMINATED_STRING:
+                string(start + 1, current);
+                error("Unterminated string");
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 报告词法错误
+     *
+     * @param message 错误信息
+     */
+    private void error(String message) {
+        if (deferredErrors != null) {
+            deferredErrors.add(new Scanner.LexError(line, message));
+        } else {
+            Lox.error(line, message);
+        }
+    }
+
+    /**
+     * 处理字符串内容的转义序列，并统计其中的换行
+     * 与 Scanner.string 一致：被转义的换行不计入行号
+     *
+     * @param from 内容起始位置
+     * @param to   内容结束位置
+     * @return 字符串的值
+     */
+    private String string(int from, int to) {
+        StringBuilder str = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = source.charAt(i);
+            if (c == '\n') {
+                line++;
+            } else if (c == '\\') {
+                if (++i >= to) break;
+                c = source.charAt(i);
+                switch (c) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    default:
+                        break;
+                }
+            }
+            str.append(c);
+        }
+        // 字节视图中逐字节读出的内容需要按 UTF-8 解码
+        String value = str.toString();
+        return source instanceof ByteSource ? ByteSource.decodeUtf8(value) : value;
+    }
+}
@@ -0,0 +1,384 @@
+package com.cheng.lox;
+
+import java.util.Arrays;
+
+/**
+ * 扁平的 AST 表示
+ * 一次解析的所有节点都存放在几个并行的基本类型数组里，节点用下标表示：
+ * 子节点总是先于父节点创建，所以下标顺序就是后序遍历的顺序，根节点是最后一个节点
+ *
+ * 作为 ExprFactory 交给 Parser 使用，返回的 Expr 只是指向节点下标的轻量引用（Node）。
+ * 一个 Node 作为子节点交给工厂之后就被回收：父节点沿用第一个子节点的 Node，其余子节点的 Node
+ * 留给之后的新节点，因此解析时只会创建和 Parser 栈深度相当的几个 Node，不随节点数增长。
+ * Parser 和 AstCodec 都只把每个节点作为子节点使用一次，用过的 Node 不能再交给工厂
+ *
+ * 遍历有两种方式：walk 直接在数组上后序遍历，不创建任何对象；
+ * accept 是兼容现有 Expr.Visitor 的适配器，每访问一个节点都要还原出一层 Expr 对象
+ */
+final class ExprArena implements ExprFactory {
+    static final byte UNARY = 0;
+    static final byte BINARY = 1;
+    static final byte GROUPING = 2;
+    static final byte LITERAL = 3;
+    static final byte TERNARY = 4;
+
+    private static final TokenType[] TYPES = TokenType.values();
+    /**
+     * 运算符按 (行号 << 6 | 类型序号) 打包存放
+     */
+    private static final int TYPE_BITS = 6;
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * 节点类型
+     */
+    private byte[] kinds;
+    /**
+     * 第一个字段：一元/二元表达式的（左）操作数、分组内的表达式、字面量池下标、三元表达式的条件
+     */
+    private int[] first;
+    /**
+     * 第二个字段：二元表达式的右操作数、三元表达式条件为真时的表达式
+     */
+    private int[] second;
+    /**
+     * 第三个字段：一元/二元表达式打包后的运算符、三元表达式条件为假时的表达式
+     */
+    private int[] third;
+    /**
+     * 节点数量
+     */
+    private int size = 0;
+
+    /**
+     * 字面量池
+     */
+    private Object[] literals = new Object[16];
+    private int literalCount = 0;
+
+    /**
+     * 回收的 Node，留给之后的新节点
+     */
+    private Node[] free = new Node[16];
+    private int freeCount = 0;
+
+    /**
+     * 直接在数组上的后序遍历的访问者
+     * 子节点以下标给出，并且已经先于父节点访问过；运算符的行号可以通过 line 获取
+     */
+    interface Walker {
+        void visitUnary(int node, TokenType operator, int right);
+
+        void visitBinary(int node, int left, TokenType operator, int right);
+
+        void visitGrouping(int node, int expression);
+
+        void visitLiteral(int node, Object value);
+
+        void visitTernary(int node, int condition, int exprIfTrue, int exprIfFalse);
+    }
+
+    /**
+     * 指向 ExprArena 中某个节点的 Expr
+     */
+    static final class Node extends Expr {
+        final ExprArena arena;
+        /**
+         * 节点下标，Node 被回收后为 -1，被复用时指向新的节点
+         */
+        int index;
+
+        Node(ExprArena arena, int index) {
+            this.arena = arena;
+            this.index = index;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return arena.accept(index, visitor);
+        }
+    }
+
+    ExprArena() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * 构造函数
+     * 节点数不会超过 Token 数，解析前按 Token 数预留容量可以避免数组反复扩容和拷贝
+     *
+     * @param capacity 预计的节点数
+     */
+    ExprArena(int capacity) {
+        capacity = Math.max(capacity, 1);
+        kinds = new byte[capacity];
+        first = new int[capacity];
+        second = new int[capacity];
+        third = new int[capacity];
+    }
+
+    @Override
+    public Expr unary(Token operator, Expr right) {
+        int packed = pack(operator);
+        Node child = node(right);
+        return reuse(child, add(UNARY, child.index, 0, packed));
+    }
+
+    @Override
+    public Expr binary(Expr left, Token operator, Expr right) {
+        int packed = pack(operator);
+        Node l = node(left);
+        Node r = node(right);
+        int index = add(BINARY, l.index, r.index, packed);
+        if (r != l) release(r);
+        return reuse(l, index);
+    }
+
+    @Override
+    public Expr grouping(Expr expression) {
+        Node child = node(expression);
+        return reuse(child, add(GROUPING, child.index, 0, 0));
+    }
+
+    @Override
+    public Expr literal(Object value) {
+        if (literalCount == literals.length) {
+            literals = Arrays.copyOf(literals, literalCount * 2);
+        }
+        literals[literalCount] = value;
+        int index = add(LITERAL, literalCount++, 0, 0);
+        return freeCount > 0 ? reuse(free[--freeCount], index) : new Node(this, index);
+    }
+
+    @Override
+    public Expr ternary(Expr condition, Expr exprIfTrue, Expr exprIfFalse) {
+        Node c = node(condition);
+        Node t = node(exprIfTrue);
+        Node f = node(exprIfFalse);
+        int index = add(TERNARY, c.index, t.index, f.index);
+        if (t != c) release(t);
+        if (f != c && f != t) release(f);
+        return reuse(c, index);
+    }
+
+    /**
+     * @return 节点数量
+     */
+    int size() {
+        return size;
+    }
+
+    byte kind(int node) {
+        return kinds[node];
+    }
+
+    int first(int node) {
+        return first[node];
+    }
+
+    int second(int node) {
+        return second[node];
+    }
+
+    int third(int node) {
+        return third[node];
+    }
+
+    /**
+     * 获取字面量节点的值
+     *
+     * @param node 字面量节点
+     * @return 字面量值
+     */
+    Object literalValue(int node) {
+        return literals[first[node]];
+    }
+
+    /**
+     * 获取一元/二元表达式的运算符类型
+     *
+     * @param node 节点
+     * @return 运算符类型
+     */
+    TokenType operatorType(int node) {
+        return TYPES[third[node] & TYPE_MASK];
+    }
+
+    /**
+     * 获取一元/二元表达式的运算符所在的行
+     *
+     * @param node 节点
+     * @return 行号
+     */
+    int line(int node) {
+        return third[node] >>> TYPE_BITS;
+    }
+
+    /**
+     * 还原一元/二元表达式的运算符 Token
+     * 运算符的原始文本都是固定的，只需要保存类型和行号
+     *
+     * @param node 节点
+     * @return 运算符 Token
+     */
+    Token operator(int node) {
+        TokenType type = operatorType(node);
+        return new Token(type, TokenBuffer.fixedLexeme(type), null, line(node));
+    }
+
+    /**
+     * 后序遍历以 root 为根的子树，直接读取数组，不创建 Expr、Node 或 Token 对象
+     * 用显式栈代替递归，嵌套再深也不会栈溢出；栈是每次遍历新建的一个 int 数组
+     *
+     * @param root   由本工厂创建的根节点
+     * @param walker 访问者
+     */
+    void walk(Expr root, Walker walker) {
+        int[] stack = new int[16];
+        int depth = 0;
+        // 非负数表示还没有展开的节点，取反表示子节点都已访问过的节点
+        stack[depth++] = node(root).index;
+        while (depth > 0) {
+            int top = stack[--depth];
+            if (top >= 0 && kinds[top] != LITERAL) {
+                if (depth + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[depth++] = ~top;
+                // 子节点从右到左入栈，使左边的先访问
+                switch (kinds[top]) {
+                    case BINARY:
+                        stack[depth++] = second[top];
+                        stack[depth++] = first[top];
+                        break;
+                    case TERNARY:
+                        stack[depth++] = third[top];
+                        stack[depth++] = second[top];
+                        stack[depth++] = first[top];
+                        break;
+                    default:
+                        stack[depth++] = first[top];
+                        break;
+                }
+                continue;
+            }
+
+            int node = top >= 0 ? top : ~top;
+            switch (kinds[node]) {
+                case UNARY:
+                    walker.visitUnary(node, operatorType(node), first[node]);
+                    break;
+                case BINARY:
+                    walker.visitBinary(node, first[node], operatorType(node), second[node]);
+                    break;
+                case GROUPING:
+                    walker.visitGrouping(node, first[node]);
+                    break;
+                case LITERAL:
+                    walker.visitLiteral(node, literals[first[node]]);
+                    break;
+                default:
+                    walker.visitTernary(node, first[node], second[node], third[node]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 用访问者访问节点，按需还原出一层 Expr 对象，子节点仍然是 Node 引用
+     *
+     * @param node    节点
+     * @param visitor 访问者
+     * @param <R>     返回值类型
+     * @return 访问结果
+     */
+    <R> R accept(int node, Expr.Visitor<R> visitor) {
+        switch (kinds[node]) {
+            case UNARY:
+                return visitor.visitUnaryExpr(new Expr.Unary(operator(node), new Node(this, first[node])));
+            case BINARY:
+                return visitor.visitBinaryExpr(new Expr.Binary(
+                        new Node(this, first[node]), operator(node), new Node(this, second[node])));
+            case GROUPING:
+                return visitor.visitGroupingExpr(new Expr.Grouping(new Node(this, first[node])));
+            case LITERAL:
+                return visitor.visitLiteralExpr(new Expr.Literal(literalValue(node)));
+            case TERNARY:
+                return visitor.visitTernaryExpr(new Expr.Ternary(new Node(this, first[node]),
+                        new Node(this, second[node]), new Node(this, third[node])));
+            default:
+                throw new IllegalStateException("Unknown node kind " + kinds[node]);
+        }
+    }
+
+    /**
+     * 追加一个节点
+     *
+     * @return 新节点的下标
+     */
+    private int add(byte kind, int a, int b, int c) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            first = Arrays.copyOf(first, capacity);
+            second = Arrays.copyOf(second, capacity);
+            third = Arrays.copyOf(third, capacity);
+        }
+        kinds[size] = kind;
+        first[size] = a;
+        second[size] = b;
+        third[size] = c;
+        return size++;
+    }
+
+    /**
+     * 获取子表达式的 Node
+     *
+     * @param expr 由本工厂创建、还没有作为子节点使用过的表达式
+     * @return Node
+     */
+    private Node node(Expr expr) {
+        if (!(expr instanceof Node) || ((Node) expr).arena != this) {
+            throw new IllegalArgumentException("Expression does not belong to this arena.");
+        }
+        Node node = (Node) expr;
+        if (node.index < 0) {
+            throw new IllegalArgumentException("Expression was already used as a child.");
+        }
+        return node;
+    }
+
+    /**
+     * 让 Node 指向新的节点
+     */
+    private static Node reuse(Node node, int index) {
+        node.index = index;
+        return node;
+    }
+
+    /**
+     * 回收作为子节点用过的 Node
+     */
+    private void release(Node node) {
+        node.index = -1;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = node;
+    }
+
+    /**
+     * 打包运算符
+     *
+     * @param operator 运算符 Token
+     * @return 打包后的值
+     */
+    private static int pack(Token operator) {
+        if (!operator.lexeme.equals(TokenBuffer.fixedLexeme(operator.type))) {
+            throw new IllegalArgumentException("Operator without a fixed lexeme: " + operator.lexeme);
+        }
+        if (operator.line > (Integer.MAX_VALUE >>> TYPE_BITS)) {
+            throw new IllegalArgumentException("Line number too large: " + operator.line);
+        }
+        return operator.line << TYPE_BITS | operator.type.ordinal();
+    }
+}
@@ -0,0 +1,82 @@
+package com.cheng.lox;
+
+/**
+ * AST 节点工厂
+ * Parser 通过它创建节点，可以换成其他的节点表示（如 ExprArena 的扁平数组）
+ */
+interface ExprFactory {
+    /**
+     * 直接创建 Expr 对象树
+     */
+    ExprFactory OBJECTS = new ExprFactory() {
+        @Override
+        public Expr unary(Token operator, Expr right) {
+            return new Expr.Unary(operator, right);
+        }
+
+        @Override
+        public Expr binary(Expr left, Token operator, Expr right) {
+            return new Expr.Binary(left, operator, right);
+        }
+
+        @Override
+        public Expr grouping(Expr expression) {
+            return new Expr.Grouping(expression);
+        }
+
+        @Override
+        public Expr literal(Object value) {
+            return new Expr.Literal(value);
+        }
+
+        @Override
+        public Expr ternary(Expr condition, Expr exprIfTrue, Expr exprIfFalse) {
+            return new Expr.Ternary(condition, exprIfTrue, exprIfFalse);
+        }
+    };
+
+    /**
+     * 创建一元表达式
+     *
+     * @param operator 运算符
+     * @param right    操作数
+     * @return 表达式
+     */
+    Expr unary(Token operator, Expr right);
+
+    /**
+     * 创建二元表达式
+     *
+     * @param left     左操作数
+     * @param operator 运算符
+     * @param right    右操作数
+     * @return 表达式
+     */
+    Expr binary(Expr left, Token operator, Expr right);
+
+    /**
+     * 创建分组表达式
+     *
+     * @param expression 括号内的表达式
+     * @return 表达式
+     */
+    Expr grouping(Expr expression);
+
+    /**
+     * 创建字面量表达式
+     *
+     * @param value 字面量值
+     * @return 表达式
+     */
+    Expr literal(Object value);
+
+    /**
+     * 创建三元表达式
+     *
+     * @param condition   条件
+     * @param exprIfTrue  条件为真时的表达式
+     * @param exprIfFalse 条件为假时的表达式
+     * @return 表达式
+     */
+    Expr ternary(Expr condition, Expr exprIfTrue, Expr exprIfFalse);
+}
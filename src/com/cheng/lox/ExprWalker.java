@@ -0,0 +1,177 @@
+package com.cheng.lox;
+
+import java.util.Arrays;
+
+/**
+ * 通用的后序遍历
+ * 用显式栈代替递归，先计算子节点的结果，再把结果交给父节点，
+ * 遍历深度只受堆大小限制，不会因为表达式嵌套太深而栈溢出
+ */
+final class ExprWalker {
+    /**
+     * 后序遍历的访问者，各方法收到的是子节点已经算好的结果
+     *
+     * @param <R> 结果类型
+     */
+    interface Visitor<R> {
+        R visitUnaryExpr(Expr.Unary expr, R right);
+
+        R visitBinaryExpr(Expr.Binary expr, R left, R right);
+
+        R visitGroupingExpr(Expr.Grouping expr, R expression);
+
+        R visitLiteralExpr(Expr.Literal expr);
+
+        R visitTernaryExpr(Expr.Ternary expr, R condition, R exprIfTrue, R exprIfFalse);
+    }
+
+    private static final byte UNARY = 0;
+    private static final byte BINARY = 1;
+    private static final byte GROUPING = 2;
+    private static final byte LITERAL = 3;
+    private static final byte TERNARY = 4;
+
+    /**
+     * 待处理的节点
+     */
+    private Expr[] nodes = new Expr[16];
+    /**
+     * 节点类型，-1 表示子节点还没有入栈
+     */
+    private byte[] kinds = new byte[16];
+    private int depth = 0;
+    /**
+     * 已完成的子节点结果
+     */
+    private Object[] results = new Object[16];
+    private int resultCount = 0;
+
+    /**
+     * 展开节点：记录类型并按从右到左的顺序压入子节点，使左边的子节点先完成
+     */
+    private final Expr.Visitor<Expr> expander = new Expr.Visitor<Expr>() {
+        @Override
+        public Expr visitUnaryExpr(Expr.Unary expr) {
+            kinds[depth - 1] = UNARY;
+            push(expr.right);
+            return expr;
+        }
+
+        @Override
+        public Expr visitBinaryExpr(Expr.Binary expr) {
+            kinds[depth - 1] = BINARY;
+            push(expr.right);
+            push(expr.left);
+            return expr;
+        }
+
+        @Override
+        public Expr visitGroupingExpr(Expr.Grouping expr) {
+            kinds[depth - 1] = GROUPING;
+            push(expr.expression);
+            return expr;
+        }
+
+        @Override
+        public Expr visitLiteralExpr(Expr.Literal expr) {
+            kinds[depth - 1] = LITERAL;
+            return expr;
+        }
+
+        @Override
+        public Expr visitTernaryExpr(Expr.Ternary expr) {
+            kinds[depth - 1] = TERNARY;
+            push(expr.exprIfFalse);
+            push(expr.exprIfTrue);
+            push(expr.condition);
+            return expr;
+        }
+    };
+
+    private ExprWalker() {
+    }
+
+    /**
+     * 后序遍历表达式树
+     *
+     * @param expr    根节点
+     * @param visitor 访问者
+     * @param <R>     结果类型
+     * @return 根节点的结果
+     */
+    static <R> R walk(Expr expr, Visitor<R> visitor) {
+        return new ExprWalker().run(expr, visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R run(Expr root, Visitor<R> visitor) {
+        push(root);
+        while (depth > 0) {
+            int top = depth - 1;
+            if (kinds[top] < 0) {
+                // 第一次遇到：展开子节点（ExprArena.Node 等节点在这里还原成具体类型）
+                Expr typed = nodes[top].accept(expander);
+                nodes[top] = typed;
+                continue;
+            }
+
+            // 子节点都已完成：取出它们的结果交给访问者
+            Expr expr = nodes[top];
+            nodes[top] = null;
+            depth--;
+            Object result;
+            switch (kinds[top]) {
+                case UNARY:
+                    result = visitor.visitUnaryExpr((Expr.Unary) expr, (R) pop());
+                    break;
+                case BINARY: {
+                    R right = (R) pop();
+                    R left = (R) pop();
+                    result = visitor.visitBinaryExpr((Expr.Binary) expr, left, right);
+                    break;
+                }
+                case GROUPING:
+                    result = visitor.visitGroupingExpr((Expr.Grouping) expr, (R) pop());
+                    break;
+                case LITERAL:
+                    result = visitor.visitLiteralExpr((Expr.Literal) expr);
+                    break;
+                default: {
+                    R exprIfFalse = (R) pop();
+                    R exprIfTrue = (R) pop();
+                    R condition = (R) pop();
+                    result = visitor.visitTernaryExpr((Expr.Ternary) expr, condition, exprIfTrue, exprIfFalse);
+                    break;
+                }
+            }
+
+            if (resultCount == results.length) {
+                results = Arrays.copyOf(results, resultCount * 2);
+            }
+            results[resultCount++] = result;
+        }
+        return (R) pop();
+    }
+
+    /**
+     * 压入一个待展开的节点
+     */
+    private void push(Expr expr) {
+        if (depth == nodes.length) {
+            nodes = Arrays.copyOf(nodes, depth * 2);
+            kinds = Arrays.copyOf(kinds, depth * 2);
+        }
+        nodes[depth] = expr;
+        kinds[depth] = -1;
+        depth++;
+    }
+
+    /**
+     * 取出最近完成的结果
+     */
+    private Object pop() {
+        Object result = results[--resultCount];
+        results[resultCount] = null;
+        return result;
+    }
+}
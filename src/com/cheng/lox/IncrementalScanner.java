@@ -0,0 +1,110 @@
+package com.cheng.lox;
+
+/**
+ * 增量词法分析
+ * 源代码被编辑后，只从编辑位置之前最近的安全位置开始重新扫描，
+ * 直到新扫描出的 Token 与旧的 Token 序列重新对齐，再把之后的 Token 整体平移
+ *
+ * Token 之间 Scanner 的状态只有当前位置和行号：如果新扫描出的某个 Token 正好结束在
+ * 某个旧 Token 平移后的结束位置，并且已经越过了编辑区域，之后的扫描结果就与旧结果相同，
+ * 只是位置和行号相差一个固定的偏移量
+ */
+final class IncrementalScanner {
+    /**
+     * Scanner 扫描一个 Token 时最多向后查看的字符数（如数字后的 "." 和数字）
+     * 结束位置离编辑位置至少这么远的 Token 不会受编辑影响
+     */
+    private static final int LOOKAHEAD = 2;
+
+    private IncrementalScanner() {
+    }
+
+    /**
+     * 在上一次扫描的结果上应用一次编辑
+     * 把 [offset, offset + removed) 替换为 inserted 个字符
+     *
+     * @param tokens   上一次扫描得到的 Token 缓冲区（原地修改）
+     * @param source   编辑后的源代码
+     * @param offset   编辑位置
+     * @param removed  删除的字符数
+     * @param inserted 插入的字符数
+     * @return 更新后的 Token 缓冲区（即 tokens）
+     */
+    static TokenBuffer relex(TokenBuffer tokens, CharSequence source, int offset, int removed, int inserted) {
+        int delta = inserted - removed;
+        int editEnd = offset + inserted;
+
+        // 从最后一个不受影响的 Token 之后开始扫描
+        int first = firstDamaged(tokens, offset);
+        int from = first == 0 ? 0 : end(tokens, first - 1);
+        int line = first == 0 ? 1 : tokens.line(first - 1);
+
+        int[] synced = {-1};
+        TokenBuffer replacement = new Scanner(source).rescan(from, line, end -> {
+            if (end < editEnd) return false;
+            synced[0] = endingAt(tokens, end - delta, first);
+            return synced[0] >= 0;
+        });
+
+        if (synced[0] < 0) {
+            // 一直扫描到了文件末尾，替换剩下的全部 Token（包括EOF）
+            tokens.splice(first, tokens.size(), replacement, delta, 0, source);
+        } else {
+            int last = synced[0];
+            int lineDelta = replacement.line(replacement.size() - 1) - tokens.line(last);
+            tokens.splice(first, last + 1, replacement, delta, lineDelta, source);
+        }
+        return tokens;
+    }
+
+    /**
+     * 找到第一个可能受编辑影响的 Token
+     *
+     * @param tokens 旧的 Token 缓冲区
+     * @param offset 编辑位置
+     * @return Token 下标
+     */
+    private static int firstDamaged(TokenBuffer tokens, int offset) {
+        int low = 0;
+        int high = tokens.size() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (end(tokens, mid) + LOOKAHEAD <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 找到结束位置正好是 end 的旧 Token
+     *
+     * @param tokens 旧的 Token 缓冲区
+     * @param end    结束位置（编辑前的坐标）
+     * @param from   最小的 Token 下标
+     * @return Token 下标，没有时为 -1
+     */
+    private static int endingAt(TokenBuffer tokens, int end, int from) {
+        // EOF 不参与对齐
+        int low = from;
+        int high = tokens.size() - 2;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midEnd = end(tokens, mid);
+            if (midEnd < end) {
+                low = mid + 1;
+            } else if (midEnd > end) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int end(TokenBuffer tokens, int index) {
+        return tokens.start(index) + tokens.length(index);
+    }
+}
@@ -0,0 +1,188 @@
+package com.cheng.lox;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * 哈希共享（hash-consing）的 AST 节点工厂
+ * 结构相同的子树只创建一次，之后重复出现时直接返回同一个对象，
+ * 内存占用与不同子表达式的数量成正比
+ *
+ * 因为子节点已经是共享的，判断两个节点结构是否相同只需比较引用（见 same），
+ * 查找时也只需按引用比较子节点，不必递归比较整棵子树。
+ * 每个节点的结构哈希在创建时由子节点缓存的哈希算出并缓存（见 hash），与对象的身份无关，
+ * 不同工厂、不同进程中结构相同的节点哈希也相同，可以作为之后缓存求值结果等的键
+ *
+ * 运算符按类型和行号区分：运行时错误报告的是运算符所在的行，不同行上的相同运算不共享，
+ * 行号不会因为共享而改变。字面量、括号和三元表达式不带 Token，不受行号影响
+ */
+final class InterningExprFactory implements ExprFactory {
+    private static final int UNARY = 1;
+    private static final int BINARY = 2;
+    private static final int GROUPING = 3;
+    private static final int LITERAL = 4;
+    private static final int TERNARY = 5;
+
+    /**
+     * 节点的结构 → 共享的节点
+     */
+    private final Map<Key, Expr> nodes = new HashMap<>();
+    /**
+     * 共享的节点 → 它的结构（包括缓存的哈希）
+     */
+    private final Map<Expr, Key> keys = new IdentityHashMap<>();
+    /**
+     * 创建请求的次数（包括被共享的）
+     */
+    private int requests = 0;
+
+    @Override
+    public Expr unary(Token operator, Expr right) {
+        Key key = key(UNARY, operator, right, null, null, null);
+        return intern(key, () -> new Expr.Unary(operator, right));
+    }
+
+    @Override
+    public Expr binary(Expr left, Token operator, Expr right) {
+        Key key = key(BINARY, operator, left, right, null, null);
+        return intern(key, () -> new Expr.Binary(left, operator, right));
+    }
+
+    @Override
+    public Expr grouping(Expr expression) {
+        Key key = key(GROUPING, null, expression, null, null, null);
+        return intern(key, () -> new Expr.Grouping(expression));
+    }
+
+    @Override
+    public Expr literal(Object value) {
+        Key key = key(LITERAL, null, null, null, null, value);
+        return intern(key, () -> new Expr.Literal(value));
+    }
+
+    @Override
+    public Expr ternary(Expr condition, Expr exprIfTrue, Expr exprIfFalse) {
+        Key key = key(TERNARY, null, condition, exprIfTrue, exprIfFalse, null);
+        return intern(key, () -> new Expr.Ternary(condition, exprIfTrue, exprIfFalse));
+    }
+
+    /**
+     * 判断两个由本工厂创建的节点结构是否相同
+     *
+     * @param a 节点
+     * @param b 节点
+     * @return 结构是否相同
+     */
+    boolean same(Expr a, Expr b) {
+        return a == b;
+    }
+
+    /**
+     * 获取节点缓存的结构哈希
+     *
+     * @param expr 由本工厂创建的节点
+     * @return 结构哈希
+     */
+    int hash(Expr expr) {
+        return keyOf(expr).hash;
+    }
+
+    /**
+     * @return 不同节点的数量
+     */
+    int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return 创建请求的次数（不共享时会创建的节点数）
+     */
+    int requests() {
+        return requests;
+    }
+
+    /**
+     * 查找结构相同的节点，找不到时创建
+     *
+     * @param key    节点结构
+     * @param create 创建新节点
+     * @return 共享的节点
+     */
+    private Expr intern(Key key, Supplier<Expr> create) {
+        requests++;
+        Expr expr = nodes.get(key);
+        if (expr == null) {
+            expr = create.get();
+            nodes.put(key, expr);
+            keys.put(expr, key);
+        }
+        return expr;
+    }
+
+    /**
+     * 构造节点结构，由子节点缓存的哈希算出结构哈希
+     */
+    private Key key(int kind, Token operator, Expr a, Expr b, Expr c, Object value) {
+        int hash = kind;
+        if (operator != null) {
+            hash = hash * 31 + operator.type.ordinal();
+            hash = hash * 31 + operator.line;
+        }
+        if (a != null) hash = hash * 31 + keyOf(a).hash;
+        if (b != null) hash = hash * 31 + keyOf(b).hash;
+        if (c != null) hash = hash * 31 + keyOf(c).hash;
+        hash = hash * 31 + Objects.hashCode(value);
+        return new Key(kind, operator == null ? null : operator.type, operator == null ? 0 : operator.line,
+                a, b, c, value, hash);
+    }
+
+    private Key keyOf(Expr expr) {
+        Key key = keys.get(expr);
+        if (key == null) {
+            throw new IllegalArgumentException("Expression was not created by this factory.");
+        }
+        return key;
+    }
+
+    /**
+     * 节点的结构：类型、运算符的类型和行号、子节点和字面量值，以及缓存的结构哈希
+     * 子节点按引用比较；哈希表直接使用缓存的结构哈希，不再对子节点求身份哈希
+     */
+    private static final class Key {
+        final int kind;
+        final TokenType operator;
+        final int line;
+        final Expr a;
+        final Expr b;
+        final Expr c;
+        final Object value;
+        final int hash;
+
+        Key(int kind, TokenType operator, int line, Expr a, Expr b, Expr c, Object value, int hash) {
+            this.kind = kind;
+            this.operator = operator;
+            this.line = line;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.value = value;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && kind == other.kind && operator == other.operator && line == other.line
+                    && a == other.a && b == other.b && c == other.c && Objects.equals(value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.cheng.lox;
+
+/**
+ * 树遍历解释器
+ * 按 Lox 的语义对表达式求值：null 和 false 为假，其余为真；
+ * "+" 接受两个数字或两个字符串，其余算术和比较运算只接受数字，相等判断使用 equals
+ *
+ * 数字运算走不装箱的快速路径：number() 直接返回 double，中间结果不创建 Double 对象，
+ * 只有整个表达式的结果需要装箱一次。
+ * 子表达式的值不是数字时（字符串、布尔值、null），number() 把它放在 boxed 中并设置 notNumber，
+ * 由调用者在两个操作数都求值之后再做类型检查，因此求值顺序和报错与逐层装箱的写法完全相同
+ *
+ * 求值是递归的，每一层都带着嵌套深度；超过 MAX_DEPTH 的子表达式交给用显式栈求值的 StackEvaluator，
+ * 因此嵌套再深也不会栈溢出，而常见深度的表达式不付出显式栈的开销
+ */
+class Interpreter implements Expr.Visitor<Object> {
+    /**
+     * 递归求值的最大嵌套深度，更深的子表达式由 StackEvaluator 求值
+     * 访问 ExprArena.Node 这类节点时每一层要经过好几个栈帧，这里留足余量
+     */
+    private static final int MAX_DEPTH = 256;
+
+    private final StackEvaluator stack = new StackEvaluator();
+
+    /**
+     * 上一次 number() 的结果不是数字
+     */
+    private boolean notNumber = false;
+    /**
+     * 上一次 number() 得到的非数字值
+     */
+    private Object boxed = null;
+    /**
+     * 通过访问者方法进入时当前节点的嵌套深度
+     */
+    private int depth = 0;
+
+    /**
+     * 对表达式求值
+     *
+     * @param expr 表达式
+     * @return 值（数字为 Double）
+     * @throws RuntimeError 操作数类型不正确时
+     */
+    Object evaluate(Expr expr) {
+        notNumber = false;
+        boxed = null;
+        depth = 0;
+        return value(expr, 0);
+    }
+
+    /**
+     * 把值转换为输出的文本，整数不带小数部分
+     *
+     * @param value 值
+     * @return 文本
+     */
+    static String stringify(Object value) {
+        if (value == null) return "null";
+
+        if (value instanceof Double) {
+            String text = value.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return value.toString();
+    }
+
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr) {
+        return unary(expr, depth);
+    }
+
+    @Override
+    public Object visitBinaryExpr(Expr.Binary expr) {
+        double value = binary(expr, depth);
+        return notNumber ? takeBoxed() : (Object) value;
+    }
+
+    @Override
+    public Object visitGroupingExpr(Expr.Grouping expr) {
+        return value(expr.expression, depth + 1);
+    }
+
+    @Override
+    public Object visitLiteralExpr(Expr.Literal expr) {
+        return expr.value;
+    }
+
+    @Override
+    public Object visitTernaryExpr(Expr.Ternary expr) {
+        return isTruthy(value(expr.condition, depth + 1))
+                ? value(expr.exprIfTrue, depth + 1)
+                : value(expr.exprIfFalse, depth + 1);
+    }
+
+    /**
+     * 装箱的求值，用于结果类型不确定的位置（三元表达式的条件、"!" 的操作数、整个表达式）
+     *
+     * @param expr  表达式
+     * @param depth 嵌套深度
+     * @return 值（数字为 Double）
+     */
+    private Object value(Expr expr, int depth) {
+        if (depth > MAX_DEPTH) return stack.evaluate(expr);
+        if (expr instanceof Expr.Literal) {
+            return ((Expr.Literal) expr).value;
+        }
+        if (expr instanceof Expr.Binary) {
+            double value = binary((Expr.Binary) expr, depth);
+            return notNumber ? takeBoxed() : (Object) value;
+        }
+        if (expr instanceof Expr.Grouping) {
+            return value(((Expr.Grouping) expr).expression, depth + 1);
+        }
+        if (expr instanceof Expr.Unary) {
+            return unary((Expr.Unary) expr, depth);
+        }
+        if (expr instanceof Expr.Ternary) {
+            Expr.Ternary ternary = (Expr.Ternary) expr;
+            return isTruthy(value(ternary.condition, depth + 1))
+                    ? value(ternary.exprIfTrue, depth + 1)
+                    : value(ternary.exprIfFalse, depth + 1);
+        }
+        return visit(expr, depth);
+    }
+
+    /**
+     * 不装箱的求值
+     * 结果是数字时直接返回；否则设置 notNumber，把值放在 boxed 中，调用者需要立即用 takeBoxed() 取走
+     *
+     * @param expr  表达式
+     * @param depth 嵌套深度
+     * @return 数字结果
+     */
+    private double number(Expr expr, int depth) {
+        if (depth > MAX_DEPTH) return unbox(stack.evaluate(expr));
+        if (expr instanceof Expr.Literal) {
+            return unbox(((Expr.Literal) expr).value);
+        }
+        if (expr instanceof Expr.Binary) {
+            return binary((Expr.Binary) expr, depth);
+        }
+        if (expr instanceof Expr.Grouping) {
+            return number(((Expr.Grouping) expr).expression, depth + 1);
+        }
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            if (unary.operator.type == TokenType.MINUS) return negate(unary, depth);
+            return notNumber(!isTruthy(value(unary.right, depth + 1)));
+        }
+        if (expr instanceof Expr.Ternary) {
+            Expr.Ternary ternary = (Expr.Ternary) expr;
+            return isTruthy(value(ternary.condition, depth + 1))
+                    ? number(ternary.exprIfTrue, depth + 1)
+                    : number(ternary.exprIfFalse, depth + 1);
+        }
+        return unbox(visit(expr, depth));
+    }
+
+    /**
+     * 其他节点（如 ExprArena.Node）通过访问者方法求值，嵌套深度经 depth 字段传过去
+     */
+    private Object visit(Expr expr, int depth) {
+        int saved = this.depth;
+        this.depth = depth;
+        try {
+            return expr.accept(this);
+        } finally {
+            this.depth = saved;
+        }
+    }
+
+    /**
+     * 一元运算
+     *
+     * @param expr  一元表达式
+     * @param depth 嵌套深度
+     * @return 值
+     */
+    private Object unary(Expr.Unary expr, int depth) {
+        if (expr.operator.type == TokenType.MINUS) return negate(expr, depth);
+        return !isTruthy(value(expr.right, depth + 1));
+    }
+
+    /**
+     * 取负
+     *
+     * @param expr  运算符为 "-" 的一元表达式
+     * @param depth 嵌套深度
+     * @return 结果
+     */
+    private double negate(Expr.Unary expr, int depth) {
+        double right = number(expr.right, depth + 1);
+        if (notNumber) {
+            takeBoxed();
+            throw new RuntimeError(expr.operator, "Operand must be a number.");
+        }
+        return -right;
+    }
+
+    /**
+     * 二元运算
+     * 先依次求出两个操作数，再检查类型
+     *
+     * @param expr  二元表达式
+     * @param depth 嵌套深度
+     * @return 数字结果，结果为字符串或布尔值时通过 notNumber 返回
+     */
+    private double binary(Expr.Binary expr, int depth) {
+        double left = number(expr.left, depth + 1);
+        boolean leftBoxed = notNumber;
+        Object leftValue = leftBoxed ? takeBoxed() : null;
+        double right = number(expr.right, depth + 1);
+        boolean rightBoxed = notNumber;
+        Object rightValue = rightBoxed ? takeBoxed() : null;
+
+        switch (expr.operator.type) {
+            case PLUS:
+                if (!leftBoxed && !rightBoxed) return left + right;
+                if (leftValue instanceof String && rightValue instanceof String) {
+                    return notNumber((String) leftValue + rightValue);
+                }
+                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+            case MINUS:
+                checkNumberOperands(expr.operator, leftBoxed, rightBoxed);
+                return left - right;
+            case STAR:
+                checkNumberOperands(expr.operator, leftBoxed, rightBoxed);
+                return left * right;
+            case SLASH:
+                checkNumberOperands(expr.operator, leftBoxed, rightBoxed);
+                return left / right;
+            case GREATER:
+                checkNumberOperands(expr.operator, leftBoxed, rightBoxed);
+                return notNumber(left > right);
+            case GREATER_EQUAL:
+                checkNumberOperands(expr.operator, leftBoxed, rightBoxed);
+                return notNumber(left >= right);
+            case LESS:
+                checkNumberOperands(expr.operator, leftBoxed, rightBoxed);
+                return notNumber(left < right);
+            case LESS_EQUAL:
+                checkNumberOperands(expr.operator, leftBoxed, rightBoxed);
+                return notNumber(left <= right);
+            case EQUAL_EQUAL:
+                return notNumber(isEqual(left, leftBoxed, leftValue, right, rightBoxed, rightValue));
+            case BANG_EQUAL:
+                return notNumber(!isEqual(left, leftBoxed, leftValue, right, rightBoxed, rightValue));
+            default:
+                throw new RuntimeError(expr.operator, "Unknown operator.");
+        }
+    }
+
+    /**
+     * 拆箱：数字直接返回，其他值记录为非数字的结果
+     */
+    private double unbox(Object value) {
+        return value instanceof Double ? (Double) value : notNumber(value);
+    }
+
+    /**
+     * 记录非数字的结果
+     *
+     * @param value 值（布尔值使用 Boolean 的缓存对象，不会分配）
+     * @return 0（调用者应检查 notNumber）
+     */
+    private double notNumber(Object value) {
+        notNumber = true;
+        boxed = value;
+        return 0;
+    }
+
+    /**
+     * 取走非数字的结果并清除标记
+     *
+     * @return 值
+     */
+    private Object takeBoxed() {
+        Object value = boxed;
+        notNumber = false;
+        boxed = null;
+        return value;
+    }
+
+    /**
+     * 检查两个操作数都是数字
+     */
+    private static void checkNumberOperands(Token operator, boolean leftBoxed, boolean rightBoxed) {
+        if (leftBoxed || rightBoxed) {
+            throw new RuntimeError(operator, "Operands must be numbers.");
+        }
+    }
+
+    /**
+     * 相等判断，与 Objects.equals 一致：数字按 Double.equals 比较（NaN 等于 NaN，0 不等于 -0）
+     */
+    private static boolean isEqual(double left, boolean leftBoxed, Object leftValue,
+                                   double right, boolean rightBoxed, Object rightValue) {
+        if (!leftBoxed && !rightBoxed) {
+            return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+        }
+        if (leftBoxed != rightBoxed) return false;
+        if (leftValue == null) return rightValue == null;
+        return leftValue.equals(rightValue);
+    }
+
+    /**
+     * 真值判断：null 和 false 为假，其余为真
+     */
+    private static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        return true;
+    }
+}
@@ -0,0 +1,830 @@
+package com.cheng.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * JVM 字节码编译器
+ * 把表达式编译为一个实现 Supplier&lt;Object&gt; 的类，用 MethodHandles.Lookup.defineHiddenClass 加载，
+ * 由 HotSpot 像普通 Java 代码一样编译成机器码。适合同一个表达式被反复求值很多次的场景：
+ * 定义一个隐藏类的开销相当于几千次求值，只求值一次时（如 Lox 的 --jit）比 VM 慢得多
+ *
+ * 编译时推断子树的类型（与 ClosureCompiler 相同）：一定得到数字的子树直接生成 dadd、dmul 等指令，
+ * 操作数放在 JVM 操作数栈上，不装箱；其他运算调用本类的静态辅助方法，在运行时检查类型，
+ * 报错的信息和行号与 Interpreter 相同。三元表达式生成条件跳转，并附带 StackMapTable
+ *
+ * 大小限制：节点数超过 MAX_NODES 或生成的方法超过 HotSpot 会编译的大小（HUGE_METHOD 字节）时，
+ * 不生成类，回退为由 VM 解释执行字节码
+ *
+ * 加载时不使用 ClassOption.STRONG，隐藏类与定义它的类加载器之间只有弱关联，
+ * 返回的对象不再被引用后，类可以被卸载，长期运行的宿主不会因此耗尽 metaspace；
+ * 调用方缓存返回的对象以便复用时，对象引用着它的类，类在缓存期间不会被卸载
+ */
+final class JvmCompiler {
+    /**
+     * 生成类的最大节点数
+     */
+    static final int MAX_NODES = 2000;
+    /**
+     * HotSpot 默认不会 JIT 编译超过 8000 字节的方法（-XX:-DontCompileHugeMethods）
+     */
+    static final int HUGE_METHOD = 8000;
+
+    private static final String CLASS_NAME = "com/cheng/lox/CompiledExpr";
+    private static final String COMPILER = "com/cheng/lox/JvmCompiler";
+    private static final String OBJECT = "java/lang/Object";
+
+    private static final byte UNARY = 0;
+    private static final byte BINARY = 1;
+    private static final byte LITERAL = 3;
+    private static final byte TERNARY = 4;
+
+    /**
+     * 栈中值的类型
+     */
+    private static final byte TYPE_DOUBLE = 0;
+    private static final byte TYPE_OBJECT = 1;
+    private static final byte TYPE_INT = 2;
+
+    private static final int ACONST_NULL = 0x01;
+    private static final int ICONST_0 = 0x03;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int POP2 = 0x58;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DNEG = 0x77;
+    private static final int IFEQ = 0x99;
+    private static final int GOTO = 0xa7;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int GETSTATIC = 0xb2;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * 构建中间表示：去掉分组，记录每个节点是否一定得到数字
+     */
+    private static final ExprWalker.Visitor<Node> BUILDER = new ExprWalker.Visitor<Node>() {
+        @Override
+        public Node visitUnaryExpr(Expr.Unary expr, Node right) {
+            boolean numeric = expr.operator.type == TokenType.MINUS && right.numeric;
+            return new Node(UNARY, expr.operator, null, right, null, null, numeric);
+        }
+
+        @Override
+        public Node visitBinaryExpr(Expr.Binary expr, Node left, Node right) {
+            boolean numeric = left.numeric && right.numeric && isArithmetic(expr.operator.type);
+            return new Node(BINARY, expr.operator, null, left, right, null, numeric);
+        }
+
+        @Override
+        public Node visitGroupingExpr(Expr.Grouping expr, Node expression) {
+            return expression;
+        }
+
+        @Override
+        public Node visitLiteralExpr(Expr.Literal expr) {
+            return new Node(LITERAL, null, expr.value, null, null, null, expr.value instanceof Double);
+        }
+
+        @Override
+        public Node visitTernaryExpr(Expr.Ternary expr, Node condition, Node exprIfTrue, Node exprIfFalse) {
+            boolean numeric = exprIfTrue.numeric && exprIfFalse.numeric;
+            return new Node(TERNARY, null, null, condition, exprIfTrue, exprIfFalse, numeric);
+        }
+    };
+
+    private final ConstantPool pool = new ConstantPool();
+    private final int thisClass = pool.classRef(CLASS_NAME);
+    private final int objectClass = pool.classRef(OBJECT);
+
+    private byte[] code = new byte[256];
+    private int count = 0;
+
+    /**
+     * 当前操作数栈中各项的类型
+     */
+    private byte[] stack = new byte[16];
+    private int stackSize = 0;
+    private int stackWords = 0;
+    private int maxStackWords = 0;
+
+    /**
+     * StackMapTable：各帧的位置和当时的栈
+     */
+    private int[] frameOffsets = new int[4];
+    private byte[][] frameStacks = new byte[4][];
+    private int frameCount = 0;
+
+    /**
+     * 遇到类文件放不下的内容（如超过 65535 字节的字符串常量）
+     */
+    private boolean tooLarge = false;
+
+    private JvmCompiler() {
+    }
+
+    /**
+     * 编译表达式
+     * 表达式太大时回退为由 VM 执行的字节码，此时返回的对象不是线程安全的
+     *
+     * @param expr 表达式
+     * @return 求值函数，调用时可能抛出 RuntimeError
+     */
+    static Supplier<Object> compile(Expr expr) {
+        byte[] classFile = generate(expr);
+        if (classFile == null) {
+            Chunk chunk = BytecodeCompiler.compile(expr);
+            VM vm = new VM();
+            return () -> vm.run(chunk);
+        }
+        return load(classFile);
+    }
+
+    /**
+     * 生成类文件
+     *
+     * @param expr 表达式
+     * @return 类文件的内容，超过大小限制时为 null
+     */
+    static byte[] generate(Expr expr) {
+        Node root = ExprWalker.walk(expr, BUILDER);
+        if (root.size > MAX_NODES) return null;
+
+        JvmCompiler compiler = new JvmCompiler();
+        compiler.emit(root);
+        compiler.box();
+        compiler.op(ARETURN);
+        compiler.pop();
+        if (compiler.tooLarge || compiler.count > HUGE_METHOD) return null;
+        return compiler.classFile();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> load(byte[] classFile) {
+        try {
+            // 不加 ClassOption.STRONG：类可以在返回的对象不可达后被卸载
+            Class<?> type = LOOKUP.defineHiddenClass(classFile, true).lookupClass();
+            return (Supplier<Object>) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load compiled expression.", e);
+        }
+    }
+
+    /**
+     * 生成计算节点的代码，结果留在栈顶（数字节点为 double，其他为 Object）
+     * 节点数不超过 MAX_NODES，递归深度有界
+     */
+    private void emit(Node node) {
+        switch (node.kind) {
+            case LITERAL:
+                literal(node.value);
+                break;
+            case UNARY:
+                emit(node.a);
+                if (node.operator.type == TokenType.MINUS && node.a.numeric) {
+                    op(DNEG);
+                } else if (node.operator.type == TokenType.MINUS) {
+                    pushInt(node.operator.line);
+                    invokeStatic(COMPILER, "negate", "(Ljava/lang/Object;I)Ljava/lang/Object;", 2, TYPE_OBJECT);
+                } else {
+                    box();
+                    invokeStatic(COMPILER, "not", "(Ljava/lang/Object;)Ljava/lang/Object;", 1, TYPE_OBJECT);
+                }
+                break;
+            case BINARY:
+                binary(node);
+                break;
+            default:
+                ternary(node);
+                break;
+        }
+    }
+
+    private void binary(Node node) {
+        TokenType type = node.operator.type;
+        boolean numbers = node.a.numeric && node.b.numeric;
+        emit(node.a);
+        if (!numbers) box();
+        emit(node.b);
+        if (!numbers) box();
+
+        if (numbers) {
+            switch (type) {
+                case PLUS:
+                    arithmetic(DADD);
+                    return;
+                case MINUS:
+                    arithmetic(DSUB);
+                    return;
+                case STAR:
+                    arithmetic(DMUL);
+                    return;
+                case SLASH:
+                    arithmetic(DDIV);
+                    return;
+                default:
+                    invokeStatic(COMPILER, helper(type), "(DD)Ljava/lang/Object;", 2, TYPE_OBJECT);
+                    return;
+            }
+        }
+
+        if (type == TokenType.EQUAL_EQUAL || type == TokenType.BANG_EQUAL) {
+            invokeStatic(COMPILER, helper(type), "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", 2, TYPE_OBJECT);
+        } else {
+            pushInt(node.operator.line);
+            invokeStatic(COMPILER, helper(type), "(Ljava/lang/Object;Ljava/lang/Object;I)Ljava/lang/Object;", 3, TYPE_OBJECT);
+        }
+    }
+
+    private void ternary(Node node) {
+        if (node.a.numeric) {
+            // 数字总是真值，条件仍要计算（其中的三元表达式可能出错），结果直接丢弃
+            emit(node.a);
+            op(POP2);
+            pop();
+            emit(node.b);
+            if (!node.numeric) box();
+            return;
+        }
+
+        emit(node.a);
+        invokeStatic(COMPILER, "isTruthy", "(Ljava/lang/Object;)Z", 1, TYPE_INT);
+        int toElse = jump(IFEQ);
+        pop();
+        byte[] before = Arrays.copyOf(stack, stackSize);
+
+        emit(node.b);
+        if (!node.numeric) box();
+        int toEnd = jump(GOTO);
+
+        // 假分支从条件之后的栈开始
+        stackSize = 0;
+        stackWords = 0;
+        for (byte type : before) push(type);
+        patch(toElse);
+        frame();
+
+        emit(node.c);
+        if (!node.numeric) box();
+        patch(toEnd);
+        frame();
+    }
+
+    private void literal(Object value) {
+        if (value == null) {
+            op(ACONST_NULL);
+            push(TYPE_OBJECT);
+        } else if (value instanceof Boolean) {
+            op(GETSTATIC);
+            u2(pool.fieldRef("java/lang/Boolean", (Boolean) value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;"));
+            push(TYPE_OBJECT);
+        } else if (value instanceof Double) {
+            long bits = Double.doubleToRawLongBits((Double) value);
+            if (bits == 0L) {
+                op(DCONST_0);
+            } else if (bits == Double.doubleToRawLongBits(1.0)) {
+                op(DCONST_1);
+            } else {
+                op(LDC2_W);
+                u2(pool.doubleConstant((Double) value));
+            }
+            push(TYPE_DOUBLE);
+        } else {
+            String text = value.toString();
+            // modified UTF-8 中每个字符最多 3 字节
+            if (text.length() > 0xffff / 3) {
+                tooLarge = true;
+                op(ACONST_NULL);
+            } else {
+                ldc(pool.string(text));
+            }
+            push(TYPE_OBJECT);
+        }
+    }
+
+    private void arithmetic(int opcode) {
+        op(opcode);
+        pop();
+    }
+
+    /**
+     * 栈顶是 double 时装箱为 Double
+     */
+    private void box() {
+        if (stack[stackSize - 1] != TYPE_DOUBLE) return;
+        invokeStatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", 1, TYPE_OBJECT);
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(BIPUSH);
+            u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(SIPUSH);
+            u2(value);
+        } else {
+            ldc(pool.integer(value));
+        }
+        push(TYPE_INT);
+    }
+
+    private void ldc(int index) {
+        if (index <= 0xff) {
+            op(LDC);
+            u1(index);
+        } else {
+            op(LDC_W);
+            u2(index);
+        }
+    }
+
+    /**
+     * 调用静态方法
+     *
+     * @param arguments 弹出的参数个数
+     * @param result    压入的结果类型
+     */
+    private void invokeStatic(String owner, String name, String descriptor, int arguments, byte result) {
+        op(INVOKESTATIC);
+        u2(pool.methodRef(owner, name, descriptor));
+        for (int i = 0; i < arguments; i++) pop();
+        push(result);
+    }
+
+    /**
+     * 发出跳转指令，偏移量先留空
+     *
+     * @return 跳转指令的位置
+     */
+    private int jump(int opcode) {
+        int at = count;
+        op(opcode);
+        u2(0);
+        return at;
+    }
+
+    /**
+     * 把跳转目标回填为当前位置
+     */
+    private void patch(int at) {
+        int offset = count - at;
+        code[at + 1] = (byte) (offset >>> 8);
+        code[at + 2] = (byte) offset;
+    }
+
+    /**
+     * 在当前位置记录栈映射帧（嵌套的三元表达式可能在同一位置结束，栈也相同，只记录一次）
+     */
+    private void frame() {
+        if (frameCount > 0 && frameOffsets[frameCount - 1] == count) return;
+        if (frameCount == frameOffsets.length) {
+            frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+            frameStacks = Arrays.copyOf(frameStacks, frameCount * 2);
+        }
+        frameOffsets[frameCount] = count;
+        frameStacks[frameCount] = Arrays.copyOf(stack, stackSize);
+        frameCount++;
+    }
+
+    private void push(byte type) {
+        if (stackSize == stack.length) stack = Arrays.copyOf(stack, stackSize * 2);
+        stack[stackSize++] = type;
+        stackWords += type == TYPE_DOUBLE ? 2 : 1;
+        if (stackWords > maxStackWords) maxStackWords = stackWords;
+    }
+
+    private void pop() {
+        stackWords -= stack[--stackSize] == TYPE_DOUBLE ? 2 : 1;
+    }
+
+    private void op(int opcode) {
+        u1(opcode);
+    }
+
+    private void u1(int value) {
+        if (count == code.length) code = Arrays.copyOf(code, count * 2);
+        code[count++] = (byte) value;
+    }
+
+    private void u2(int value) {
+        u1(value >>> 8);
+        u1(value);
+    }
+
+    /**
+     * 组装类文件：构造方法和 get()
+     */
+    private byte[] classFile() {
+        int supplier = pool.classRef("java/util/function/Supplier");
+        int objectInit = pool.methodRef(OBJECT, "<init>", "()V");
+        int codeName = pool.utf8("Code");
+        int initName = pool.utf8("<init>");
+        int initDescriptor = pool.utf8("()V");
+        int getName = pool.utf8("get");
+        int getDescriptor = pool.utf8("()Ljava/lang/Object;");
+        int stackMapName = frameCount > 0 ? pool.utf8("StackMapTable") : 0;
+
+        Output out = new Output();
+        out.u4(0xcafebabe);
+        out.u2(0);
+        out.u2(61);
+        pool.writeTo(out);
+        out.u2(0x0030);
+        out.u2(thisClass);
+        out.u2(objectClass);
+        out.u2(1);
+        out.u2(supplier);
+        out.u2(0);
+
+        out.u2(2);
+        // <init>: aload_0; invokespecial Object.<init>; return
+        out.u2(0x0001);
+        out.u2(initName);
+        out.u2(initDescriptor);
+        out.u2(1);
+        out.u2(codeName);
+        out.u4(12 + 5);
+        out.u2(1);
+        out.u2(1);
+        out.u4(5);
+        out.u1(ALOAD_0);
+        out.u1(INVOKESPECIAL);
+        out.u2(objectInit);
+        out.u1(RETURN);
+        out.u2(0);
+        out.u2(0);
+
+        // get()
+        Output stackMap = frameCount > 0 ? stackMap() : null;
+        out.u2(0x0001);
+        out.u2(getName);
+        out.u2(getDescriptor);
+        out.u2(1);
+        out.u2(codeName);
+        out.u4(12 + count + (stackMap == null ? 0 : 6 + stackMap.size()));
+        out.u2(maxStackWords);
+        out.u2(1);
+        out.u4(count);
+        out.write(code, 0, count);
+        out.u2(0);
+        if (stackMap == null) {
+            out.u2(0);
+        } else {
+            out.u2(1);
+            out.u2(stackMapName);
+            out.u4(stackMap.size());
+            out.write(stackMap.toByteArray(), 0, stackMap.size());
+        }
+
+        out.u2(0);
+        return out.toByteArray();
+    }
+
+    /**
+     * StackMapTable 的内容，每帧都用 full_frame，局部变量只有 this
+     */
+    private Output stackMap() {
+        Output out = new Output();
+        out.u2(frameCount);
+        int previous = -1;
+        for (int i = 0; i < frameCount; i++) {
+            out.u1(255);
+            out.u2(frameOffsets[i] - previous - 1);
+            previous = frameOffsets[i];
+            out.u2(1);
+            out.u1(7);
+            out.u2(thisClass);
+            byte[] types = frameStacks[i];
+            out.u2(types.length);
+            for (byte type : types) {
+                if (type == TYPE_DOUBLE) {
+                    out.u1(3);
+                } else {
+                    out.u1(7);
+                    out.u2(objectClass);
+                }
+            }
+        }
+        return out;
+    }
+
+    private static boolean isArithmetic(TokenType type) {
+        return type == TokenType.PLUS || type == TokenType.MINUS
+                || type == TokenType.STAR || type == TokenType.SLASH;
+    }
+
+    /**
+     * 运算符对应的辅助方法
+     */
+    private static String helper(TokenType type) {
+        switch (type) {
+            case PLUS:
+                return "add";
+            case MINUS:
+                return "subtract";
+            case STAR:
+                return "multiply";
+            case SLASH:
+                return "divide";
+            case GREATER:
+                return "greater";
+            case GREATER_EQUAL:
+                return "greaterEqual";
+            case LESS:
+                return "less";
+            case LESS_EQUAL:
+                return "lessEqual";
+            case EQUAL_EQUAL:
+                return "equal";
+            case BANG_EQUAL:
+                return "notEqual";
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + type);
+        }
+    }
+
+    // 以下为生成的代码调用的辅助方法，隐藏类与本类在同一个包中，可以访问包级私有的方法
+
+    static Object negate(Object value, int line) {
+        if (!(value instanceof Double)) throw error(TokenType.MINUS, line, "Operand must be a number.");
+        return -(Double) value;
+    }
+
+    static Object not(Object value) {
+        return !isTruthy(value);
+    }
+
+    static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        return true;
+    }
+
+    static Object add(Object a, Object b, int line) {
+        if (a instanceof Double && b instanceof Double) return (Double) a + (Double) b;
+        if (a instanceof String && b instanceof String) return (String) a + b;
+        throw error(TokenType.PLUS, line, "Operands must be two numbers or two strings.");
+    }
+
+    static Object subtract(Object a, Object b, int line) {
+        checkNumberOperands(TokenType.MINUS, line, a, b);
+        return (Double) a - (Double) b;
+    }
+
+    static Object multiply(Object a, Object b, int line) {
+        checkNumberOperands(TokenType.STAR, line, a, b);
+        return (Double) a * (Double) b;
+    }
+
+    static Object divide(Object a, Object b, int line) {
+        checkNumberOperands(TokenType.SLASH, line, a, b);
+        return (Double) a / (Double) b;
+    }
+
+    static Object greater(Object a, Object b, int line) {
+        checkNumberOperands(TokenType.GREATER, line, a, b);
+        return (Double) a > (Double) b;
+    }
+
+    static Object greaterEqual(Object a, Object b, int line) {
+        checkNumberOperands(TokenType.GREATER_EQUAL, line, a, b);
+        return (Double) a >= (Double) b;
+    }
+
+    static Object less(Object a, Object b, int line) {
+        checkNumberOperands(TokenType.LESS, line, a, b);
+        return (Double) a < (Double) b;
+    }
+
+    static Object lessEqual(Object a, Object b, int line) {
+        checkNumberOperands(TokenType.LESS_EQUAL, line, a, b);
+        return (Double) a <= (Double) b;
+    }
+
+    static Object greater(double a, double b) {
+        return a > b;
+    }
+
+    static Object greaterEqual(double a, double b) {
+        return a >= b;
+    }
+
+    static Object less(double a, double b) {
+        return a < b;
+    }
+
+    static Object lessEqual(double a, double b) {
+        return a <= b;
+    }
+
+    static Object equal(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    static Object notEqual(double a, double b) {
+        return Double.doubleToLongBits(a) != Double.doubleToLongBits(b);
+    }
+
+    static Object equal(Object a, Object b) {
+        if (a == null) return b == null;
+        return a.equals(b);
+    }
+
+    static Object notEqual(Object a, Object b) {
+        return !(Boolean) equal(a, b);
+    }
+
+    private static void checkNumberOperands(TokenType type, int line, Object a, Object b) {
+        if (a instanceof Double && b instanceof Double) return;
+        throw error(type, line, "Operands must be numbers.");
+    }
+
+    private static RuntimeError error(TokenType type, int line, String message) {
+        return new RuntimeError(new Token(type, TokenBuffer.fixedLexeme(type), null, line), message);
+    }
+
+    /**
+     * 中间表示的节点
+     */
+    private static final class Node {
+        final byte kind;
+        final Token operator;
+        final Object value;
+        final Node a;
+        final Node b;
+        final Node c;
+        /**
+         * 一定得到数字（且不会出错）
+         */
+        final boolean numeric;
+        /**
+         * 子树的节点数
+         */
+        final int size;
+
+        Node(byte kind, Token operator, Object value, Node a, Node b, Node c, boolean numeric) {
+            this.kind = kind;
+            this.operator = operator;
+            this.value = value;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.numeric = numeric;
+            this.size = 1 + (a == null ? 0 : a.size) + (b == null ? 0 : b.size) + (c == null ? 0 : c.size);
+        }
+    }
+
+    /**
+     * 常量池，相同的项只写一次
+     */
+    private static final class ConstantPool {
+        private final Output entries = new Output();
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int next = 1;
+
+        int utf8(String text) {
+            Integer index = indexes.get("U" + text);
+            if (index != null) return index;
+            entries.u1(1);
+            byte[] bytes = modifiedUtf8(text);
+            entries.u2(bytes.length);
+            entries.write(bytes, 0, bytes.length);
+            return add("U" + text, 1);
+        }
+
+        int integer(int value) {
+            Integer index = indexes.get("I" + value);
+            if (index != null) return index;
+            entries.u1(3);
+            entries.u4(value);
+            return add("I" + value, 1);
+        }
+
+        int doubleConstant(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            Integer index = indexes.get("D" + bits);
+            if (index != null) return index;
+            entries.u1(6);
+            entries.u4((int) (bits >>> 32));
+            entries.u4((int) bits);
+            // double 占两个常量池项
+            return add("D" + bits, 2);
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            Integer index = indexes.get("C" + name);
+            if (index != null) return index;
+            entries.u1(7);
+            entries.u2(nameIndex);
+            return add("C" + name, 1);
+        }
+
+        int string(String value) {
+            int valueIndex = utf8(value);
+            Integer index = indexes.get("S" + value);
+            if (index != null) return index;
+            entries.u1(8);
+            entries.u2(valueIndex);
+            return add("S" + value, 1);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            return memberRef(9, owner, name, descriptor);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return memberRef(10, owner, name, descriptor);
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor) {
+            String key = "M" + tag + owner + "." + name + descriptor;
+            Integer index = indexes.get(key);
+            if (index != null) return index;
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            String nameAndTypeKey = "N" + name + descriptor;
+            Integer nameAndType = indexes.get(nameAndTypeKey);
+            if (nameAndType == null) {
+                entries.u1(12);
+                entries.u2(nameIndex);
+                entries.u2(descriptorIndex);
+                nameAndType = add(nameAndTypeKey, 1);
+            }
+            entries.u1(tag);
+            entries.u2(ownerIndex);
+            entries.u2(nameAndType);
+            return add(key, 1);
+        }
+
+        private int add(String key, int slots) {
+            int index = next;
+            next += slots;
+            indexes.put(key, index);
+            return index;
+        }
+
+        void writeTo(Output out) {
+            out.u2(next);
+            out.write(entries.toByteArray(), 0, entries.size());
+        }
+
+        /**
+         * 类文件使用的 modified UTF-8：'\0' 和增补字符的编码与标准 UTF-8 不同
+         */
+        private static byte[] modifiedUtf8(String text) {
+            Output out = new Output();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c != 0 && c < 0x80) {
+                    out.u1(c);
+                } else if (c < 0x800) {
+                    out.u1(0xc0 | c >> 6);
+                    out.u1(0x80 | c & 0x3f);
+                } else {
+                    out.u1(0xe0 | c >> 12);
+                    out.u1(0x80 | c >> 6 & 0x3f);
+                    out.u1(0x80 | c & 0x3f);
+                }
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * 按大端序写入的字节输出
+     */
+    private static final class Output extends java.io.ByteArrayOutputStream {
+        void u1(int value) {
+            write(value);
+        }
+
+        void u2(int value) {
+            write(value >>> 8);
+            write(value);
+        }
+
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+    }
+}
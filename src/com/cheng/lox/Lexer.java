@@ -0,0 +1,32 @@
+package com.cheng.lox;
+
+import java.util.List;
+
+/**
+ * 词法分析引擎
+ * 手写的 Scanner 和表驱动的 DfaScanner 都实现这个接口，输出完全相同的 Token 序列
+ */
+interface Lexer {
+    /**
+     * 扫描所有Token到紧凑缓冲区
+     *
+     * @return Token缓冲区（以EOF结尾）
+     */
+    TokenBuffer scanBuffer();
+
+    /**
+     * 扫描下一个Token
+     * 用于按需拉取，到达文件末尾后一直返回EOF
+     *
+     * @return 下一个Token
+     */
+    Token nextToken();
+
+    /**
+     * 改为把词法错误记录下来，不再直接通过 Lox.error 报告
+     * 扫描在其他线程中进行时使用，由调用方在合适的线程中按顺序报告
+     *
+     * @return 记录错误的列表，之后扫描时会追加到这里，调用方可以取走并清空
+     */
+    List<Scanner.LexError> deferErrors();
+}
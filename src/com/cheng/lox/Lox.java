@@ -1,12 +1,17 @@
 package com.cheng.lox;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -19,6 +24,84 @@ public class Lox {
      */
     static boolean hadError = false;
 
+    /**
+     * 运行时错误标志
+     */
+    static boolean hadRuntimeError = false;
+
+    /**
+     * 带缓冲的标准输出，求值结果和 AST 通过它输出，每次 run 结束时刷新
+     * 错误信息直接写到 System.out，写之前先刷新这里已经缓冲的内容（见 report、runtimeError），
+     * 所以两者的顺序与输出时的顺序一致
+     */
+    private static final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()), 1 << 16);
+
+    /**
+     * 是否按需拉取 Token（--stream）
+     * 开启后 Parser 边解析边扫描，遇到语法错误时不会再报告其后的词法错误
+     */
+    private static boolean streamTokens = false;
+
+    /**
+     * 是否在独立线程中扫描，与解析并行（--pipeline）
+     */
+    private static boolean pipeline = false;
+
+    /**
+     * 是否把源代码分段并行扫描（--parallel）
+     */
+    private static boolean parallelScan = false;
+
+    /**
+     * 是否使用表驱动的 DFA 词法分析器（--dfa）
+     */
+    private static boolean dfaScanner = false;
+
+    /**
+     * 是否把脚本文件当作 UTF-8 逐字节扫描（--utf8，默认字符集是 UTF-8 时自动开启）
+     */
+    private static boolean utf8 = StandardCharsets.UTF_8.equals(Charset.defaultCharset());
+
+    /**
+     * 是否在解析后做常量折叠（--fold）
+     */
+    private static boolean fold = false;
+
+    /**
+     * 是否让结构相同的子表达式共享同一个节点（--intern）
+     */
+    private static boolean intern = false;
+
+    /**
+     * 是否在语法错误后恢复并继续解析，一次报告所有错误（--recover）
+     */
+    private static boolean recover = false;
+
+    /**
+     * 磁盘 AST 缓存（--cache），源代码不变时跳过词法分析和语法分析
+     */
+    private static AstCache cache = null;
+
+    /**
+     * 是否只打印 AST 而不求值（--ast）
+     */
+    private static boolean printAst = false;
+
+    /**
+     * 是否编译为字节码由 VM 执行（--vm），默认由 Interpreter 遍历 AST 求值
+     */
+    private static boolean bytecode = false;
+
+    /**
+     * 是否编译为闭包后求值（--closures）
+     */
+    private static boolean closures = false;
+
+    /**
+     * 是否编译为 JVM 字节码后求值（--jit）
+     */
+    private static boolean jvmBytecode = false;
+
     /**
      * 主方法
      * 处理命令行参数，决定运行模式
@@ -28,27 +111,110 @@ public class Lox {
      */
     public static void main(String[] args) throws IOException {
         System.out.println(Arrays.toString(args));
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [scirpt]");
+        int index = 0;
+        while (index < args.length && args[index].startsWith("--")) {
+            if (!option(args[index])) {
+                System.out.println("Unknown option: " + args[index]);
+                System.exit(64);
+            }
+            index++;
+        }
+
+        int remaining = args.length - index;
+        if (remaining > 1) {
+            System.out.println("Usage: jlox [options] [scirpt]");
             System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        } else if (remaining == 1) {
+            runFile(args[index]);
         } else {
             runPrompt();
         }
     }
 
+    /**
+     * 处理命令行选项
+     *
+     * @param option 选项
+     * @return 是否是可识别的选项
+     */
+    private static boolean option(String option) {
+        switch (option) {
+            case "--stream":
+                streamTokens = true;
+                return true;
+            case "--pipeline":
+                pipeline = true;
+                return true;
+            case "--parallel":
+                parallelScan = true;
+                return true;
+            case "--dfa":
+                dfaScanner = true;
+                return true;
+            case "--utf8":
+                utf8 = true;
+                return true;
+            case "--fold":
+                fold = true;
+                return true;
+            case "--intern":
+                intern = true;
+                return true;
+            case "--recover":
+                recover = true;
+                return true;
+            case "--ast":
+                printAst = true;
+                return true;
+            case "--vm":
+                bytecode = true;
+                return true;
+            case "--closures":
+                closures = true;
+                return true;
+            case "--jit":
+                jvmBytecode = true;
+                return true;
+            case "--cache":
+                cache = new AstCache(Paths.get(System.getProperty("user.home"), ".cache", "lox"));
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * 读取文件
+     * 文件通过内存映射读取，UTF-8 或纯 ASCII 时 Scanner 直接扫描字节视图，不做整体解码和拷贝，
+     * 只有字符串字面量的内容会被解码；否则从第一个非 ASCII 字节开始回退为按默认字符集解码
+     * 开启 --cache 时先按内容哈希查找缓存的 AST，命中时不再扫描和解析
      *
      * @param path 代码文件地址
      * @throws IOException
      */
     private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        ByteSource source = ByteSource.map(Paths.get(path));
+        if (!utf8 && cache == null && !parallelScan) {
+            // 默认字符集不是 UTF-8：扫描到第一个非 ASCII 字节时才解码，纯 ASCII 时等同于逐字节扫描
+            run(source.decodeLazily(Charset.defaultCharset()));
+        } else if (!utf8 && !source.isAscii()) {
+            // --cache 要对全部字节计算哈希、--parallel 要按位置切分，本来就会读完整个文件，直接检查
+            run(source.decode(Charset.defaultCharset()));
+        } else if (cache != null) {
+            // 缓存键按字节计算，只用于逐字节扫描的情况
+            String key = AstCache.key(source, recover);
+            List<Expr> expressions = cache.load(key);
+            if (expressions == null) {
+                expressions = parse(source);
+                if (!hadError) cache.store(key, expressions);
+            }
+            if (!hadError) execute(expressions);
+        } else {
+            run(source);
+        }
 
         if (hadError) System.exit(65);
+        if (hadRuntimeError) System.exit(70);
     }
 
     /**
@@ -56,17 +222,104 @@ public class Lox {
      * 负责解析源代码，生成Token并执行
      *
      * @param source 源代码
+     * @throws IOException 写入标准输出时发生的异常
      */
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+    private static void run(CharSequence source) throws IOException {
+        List<Expr> expressions = parse(source);
+        if (hadError) return;
 
-        Parser parser = new Parser(tokens);
-        Expr expression = parser.parse();
+        execute(expressions);
+    }
 
-        if (hadError) return;
+    /**
+     * 词法分析和语法分析
+     *
+     * @param source 源代码
+     * @return 解析出的表达式
+     */
+    private static List<Expr> parse(CharSequence source) {
+        Lexer scanner = dfaScanner ? new DfaScanner(source) : new Scanner(source);
+        List<Expr> expressions;
+        if (pipeline) {
+            TokenPipeline tokens = new TokenPipeline(scanner);
+            try {
+                expressions = parse(parser(tokens));
+            } finally {
+                tokens.close();
+            }
+        } else if (parallelScan) {
+            expressions = parse(parser(ParallelScanner.scan(source)));
+        } else {
+            TokenSource tokens = streamTokens ? new TokenStream(scanner) : scanner.scanBuffer();
+            expressions = parse(parser(tokens));
+        }
+        return expressions;
+    }
 
-        System.out.println(new AstPrinter().print(expression));
+    /**
+     * 执行解析出的表达式：求值并打印结果，--ast 时打印 AST
+     * 求值由 Interpreter 遍历 AST 完成，--vm 时先编译为字节码再由 VM 执行，
+     * --closures 时先编译为闭包，--jit 时先编译为 JVM 字节码
+     * 遇到运行时错误时报告并停止
+     *
+     * @param expressions 表达式
+     * @throws IOException 写入标准输出时发生的异常
+     */
+    private static void execute(List<Expr> expressions) throws IOException {
+        ConstantFolder folder = fold ? new ConstantFolder() : null;
+        AstPrinter printer = printAst ? new AstPrinter() : null;
+        Interpreter interpreter = printAst || bytecode || closures || jvmBytecode ? null : new Interpreter();
+        VM vm = !printAst && bytecode ? new VM() : null;
+        try {
+            for (Expr expression : expressions) {
+                if (folder != null) expression = folder.optimize(expression);
+                if (printer != null) {
+                    printer.print(expression, out);
+                } else {
+                    Object value;
+                    if (vm != null) {
+                        value = vm.interpret(expression);
+                    } else if (closures) {
+                        value = ClosureCompiler.compile(expression).get();
+                    } else if (jvmBytecode) {
+                        // 每个表达式只求值一次，编译结果没有复用的机会，定义隐藏类的开销使它比 --vm 慢，只作演示
+                        value = JvmCompiler.compile(expression).get();
+                    } else {
+                        value = interpreter.evaluate(expression);
+                    }
+                    out.write(Interpreter.stringify(value));
+                }
+                out.write(System.lineSeparator());
+            }
+            if (folder != null) {
+                out.write("Folded " + folder.eliminated() + " nodes." + System.lineSeparator());
+            }
+        } catch (RuntimeError error) {
+            runtimeError(error);
+        }
+        out.flush();
+    }
+
+    /**
+     * 创建语法分析器，--intern 时由 InterningExprFactory 创建节点
+     *
+     * @param tokens Token序列
+     * @return 语法分析器
+     */
+    private static Parser parser(TokenSource tokens) {
+        return new Parser(tokens, intern ? new InterningExprFactory() : ExprFactory.OBJECTS);
+    }
+
+    /**
+     * 解析源代码
+     * 错误恢复模式（--recover）下解析所有表达式并报告全部语法错误，否则只解析第一个表达式
+     *
+     * @param parser 解析器
+     * @return 解析出的表达式
+     */
+    private static List<Expr> parse(Parser parser) {
+        if (recover) return parser.parseAll();
+        return Collections.singletonList(parser.parse());
     }
 
     /**
@@ -85,6 +338,7 @@ public class Lox {
             if (line == null) break;
             run(line);
             hadError = false;
+            hadRuntimeError = false;
         }
     }
 
@@ -112,6 +366,21 @@ public class Lox {
         }
     }
 
+    /**
+     * 报告运行时错误
+     *
+     * @param error 运行时错误
+     */
+    static void runtimeError(RuntimeError error) {
+        flushOut();
+        if (error.token == null) {
+            System.out.println(error.getMessage());
+        } else {
+            System.out.println(error.getMessage() + "\n[line " + error.token.line + "]");
+        }
+        hadRuntimeError = true;
+    }
+
     /**
      * 生成错误报告
      * 
@@ -120,7 +389,19 @@ public class Lox {
      * @param message 错误信息
      */
     private static void report(int line, String where, String message) {
+        flushOut();
         System.out.println("[line " + line + "] Error" + where + ": " + message);
         hadError = true;
     }
+
+    /**
+     * 刷新缓冲的标准输出，在直接写 System.out 之前调用
+     */
+    private static void flushOut() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
@@ -0,0 +1,73 @@
+package com.cheng.lox;
+
+/**
+ * 数字字面量解析
+ * 直接从源代码中读取数字，不截取字符串：
+ * 整数部分用 long 累加，值能被 double 精确表示时直接转换；
+ * 有效数字不超过 15 位的小数用一次除法得到正确舍入的结果；
+ * 其余情况回退到 Double.parseDouble
+ */
+final class NumberLiteral {
+    /**
+     * 缓存的小整数个数（0 到 CACHE_SIZE - 1）
+     */
+    private static final int CACHE_SIZE = 1024;
+    private static final Double[] CACHE = new Double[CACHE_SIZE];
+    /**
+     * double 能精确表示的 10 的幂
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /**
+     * 快速路径允许的最多有效数字位数（10^15 < 2^53，累加结果可以被 double 精确表示）
+     */
+    private static final int MAX_FAST_DIGITS = 15;
+
+    static {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            CACHE[i] = (double) i;
+        }
+    }
+
+    private NumberLiteral() {
+    }
+
+    /**
+     * 解析数字字面量，格式为 digits ( "." digits )?，由词法分析器保证
+     *
+     * @param source 源代码
+     * @param start  起始位置
+     * @param end    结束位置
+     * @return 数值（小整数返回缓存的对象）
+     */
+    static Double parse(CharSequence source, int start, int end) {
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            // 前导零不计入有效数字
+            if (mantissa != 0 || c != '0') digits++;
+            if (digits > MAX_FAST_DIGITS) {
+                return Double.parseDouble(source.subSequence(start, end).toString());
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            if (fraction) scale++;
+        }
+
+        if (scale == 0 || mantissa == 0) {
+            return mantissa < CACHE_SIZE ? CACHE[(int) mantissa] : Double.valueOf(mantissa);
+        }
+        if (scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(source.subSequence(start, end).toString());
+        }
+        return mantissa / POWERS_OF_TEN[scale];
+    }
+}
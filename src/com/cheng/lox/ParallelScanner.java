@@ -0,0 +1,151 @@
+package com.cheng.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 并行词法分析
+ * 把源代码按换行切成若干段，在 ForkJoin 线程池中分别扫描，再按顺序拼接并修正行号，
+ * 结果与顺序扫描（Scanner.scanBuffer）完全一致
+ *
+ * 切分点只保证落在换行之后，是否处在字符串或块注释内部要到拼接时才能确定：
+ * 如果前一段扫描结束的位置正好是下一段的起点，说明切分点位于两个 Token 之间，
+ * 下一段的结果可以直接使用；否则（有 Token 跨过了切分点）从前一段结束的位置重新扫描这一段
+ */
+final class ParallelScanner {
+    /**
+     * 每段的最小长度，源代码太短时直接顺序扫描
+     */
+    private static final int MIN_CHUNK = 1 << 20;
+
+    private ParallelScanner() {
+    }
+
+    /**
+     * 并行扫描所有Token
+     *
+     * @param source 源代码
+     * @return Token缓冲区（以EOF结尾）
+     */
+    static TokenBuffer scan(CharSequence source) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int length = source.length();
+        int count = Math.min(pool.getParallelism() * 4, length / MIN_CHUNK);
+        if (count <= 1) {
+            return new Scanner(source).scanBuffer();
+        }
+
+        // 在换行之后切分，各段以行号 1 为起点扫描，拼接时再加上偏移
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(count);
+        int from = 0;
+        for (int i = 1; i <= count && from < length; i++) {
+            int to = i == count ? length : lineStart(source, (int) ((long) length * i / count));
+            if (to <= from) continue;
+            int chunkFrom = from;
+            tasks.add(pool.submit(() -> Chunk.speculate(source, chunkFrom, to)));
+            from = to;
+        }
+
+        TokenBuffer result = new TokenBuffer(source);
+        int position = 0;
+        int line = 1;
+        for (ForkJoinTask<Chunk> task : tasks) {
+            Chunk chunk = task.join();
+            int lineOffset = line - 1;
+            if (chunk.failed || chunk.from != position) {
+                // 切分点落在了某个 Token 内部，这一段整个被前面的 Token 吞掉时直接跳过
+                if (position >= chunk.to) continue;
+                chunk = Chunk.scan(source, position, chunk.to, line);
+                lineOffset = 0;
+            }
+
+            for (Scanner.LexError error : chunk.errors) {
+                Lox.error(error.line + lineOffset, error.message);
+            }
+            result.append(chunk.tokens, lineOffset);
+            position = chunk.end;
+            line = chunk.endLine + lineOffset;
+        }
+
+        result.add(TokenType.EOF, position, 0, line, null);
+        return result;
+    }
+
+    /**
+     * 找到 index 之后（含）第一个换行的下一个位置
+     *
+     * @param source 源代码
+     * @param index  起始查找位置
+     * @return 下一行的起始位置，找不到时为源代码长度
+     */
+    private static int lineStart(CharSequence source, int index) {
+        int length = source.length();
+        while (index < length) {
+            if (source.charAt(index++) == '\n') return index;
+        }
+        return length;
+    }
+
+    /**
+     * 一段源代码的扫描结果
+     */
+    private static final class Chunk {
+        final int from;
+        final int to;
+        final boolean failed;
+        final TokenBuffer tokens;
+        final List<Scanner.LexError> errors;
+        /**
+         * 扫描结束的位置（可能超过 to）
+         */
+        final int end;
+        /**
+         * 扫描结束时的行号
+         */
+        final int endLine;
+
+        private Chunk(int from, int to, Scanner scanner, TokenBuffer tokens) {
+            this.from = from;
+            this.to = to;
+            this.failed = scanner == null;
+            this.tokens = tokens;
+            this.errors = failed ? null : scanner.deferredErrors();
+            this.end = failed ? from : scanner.position();
+            this.endLine = failed ? 1 : scanner.line();
+        }
+
+        /**
+         * 扫描一段源代码
+         *
+         * @param source 源代码
+         * @param from   起始位置
+         * @param to     结束位置
+         * @param line   起始行号
+         * @return 扫描结果
+         */
+        static Chunk scan(CharSequence source, int from, int to, int line) {
+            Scanner scanner = new Scanner(source);
+            TokenBuffer tokens = scanner.scanRange(from, to, line);
+            return new Chunk(from, to, scanner, tokens);
+        }
+
+        /**
+         * 推测性地扫描一段源代码
+         * 起点可能位于字符串内部，这时扫描可能出错，只记录失败，拼接时会重新扫描
+         *
+         * @param source 源代码
+         * @param from   起始位置
+         * @param to     结束位置
+         * @return 扫描结果
+         */
+        static Chunk speculate(CharSequence source, int from, int to) {
+            try {
+                return scan(source, from, to, 1);
+            } catch (RuntimeException e) {
+                return new Chunk(from, to, null, null);
+            }
+        }
+    }
+}
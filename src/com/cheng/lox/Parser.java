@@ -1,5 +1,7 @@
 package com.cheng.lox;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static com.cheng.lox.TokenType.*;
@@ -7,167 +9,288 @@ import static com.cheng.lox.TokenType.*;
 /**
  * 解析器类
  * 用于将 Token 序列转换为抽象语法树 (AST)
- * 实现了递归下降解析器
+ * 按递归下降的文法解析，但用显式栈代替递归，二元运算符用优先级爬升（Pratt）的方式解析
  */
 class Parser {
-    private final List<Token> tokens;
+    /**
+     * 二元运算符优先级（数值越大越先结合）
+     */
+    private static final int EQUALITY = 1;
+    private static final int COMPARISON = 2;
+    private static final int TERM = 3;
+    private static final int FACTOR = 4;
+    /**
+     * 按 TokenType 序号索引的二元运算符优先级，0 表示不是二元运算符
+     */
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+
+    static {
+        if (TokenType.values().length > Long.SIZE) {
+            throw new ExceptionInInitializerError("Token type masks need at most 64 token types.");
+        }
+
+        // equality → comparison ( ( "!=" | "==" ) comparison )* ;
+        PRECEDENCE[BANG_EQUAL.ordinal()] = EQUALITY;
+        PRECEDENCE[EQUAL_EQUAL.ordinal()] = EQUALITY;
+        // comparison → term ( ( ">" | ">=" | "<" | "<=" ) term )* ;
+        PRECEDENCE[GREATER.ordinal()] = COMPARISON;
+        PRECEDENCE[GREATER_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCE[LESS.ordinal()] = COMPARISON;
+        PRECEDENCE[LESS_EQUAL.ordinal()] = COMPARISON;
+        // term → factor ( ( "-" | "+" ) factor )* ;
+        PRECEDENCE[MINUS.ordinal()] = TERM;
+        PRECEDENCE[PLUS.ordinal()] = TERM;
+        // factor → unary ( ( "/" | "*" ) unary )* ;
+        PRECEDENCE[SLASH.ordinal()] = FACTOR;
+        PRECEDENCE[STAR.ordinal()] = FACTOR;
+    }
+
+    /**
+     * 一元运算符
+     */
+    private static final long UNARY_OPERATORS = mask(BANG, MINUS);
+    /**
+     * 带字面量的 Token
+     */
+    private static final long LITERALS = mask(NUMBER, STRING);
+
+    private final TokenSource tokens;
+    /**
+     * AST 节点工厂
+     */
+    private final ExprFactory factory;
     private int current = 0;
 
+    /**
+     * 帧类型：一元运算符、二元运算符及其左操作数、左括号、
+     * 已读完条件等待 then 分支的三元表达式、已读完 then 分支等待 else 分支的三元表达式
+     */
+    private static final byte UNARY_FRAME = 0;
+    private static final byte BINARY_FRAME = 1;
+    private static final byte GROUPING_FRAME = 2;
+    private static final byte CONDITION_FRAME = 3;
+    private static final byte ELSE_FRAME = 4;
+
+    /**
+     * 显式的解析栈，按帧存放在平行数组中
+     */
+    private byte[] frameKinds = new byte[16];
+    /**
+     * 二元运算的左操作数，或三元表达式的条件
+     */
+    private Expr[] frameExprs = new Expr[16];
+    /**
+     * 三元表达式的 then 分支
+     */
+    private Expr[] frameThens = new Expr[16];
+    private Token[] frameOperators = new Token[16];
+    private int depth = 0;
+
     /**
      * 构造方法
      *
      * @param tokens 词法分析器生成的 Token 序列
      */
     Parser(List<Token> tokens) {
-        this.tokens = tokens;
-    }
-
-    Expr parse() {
-        try {
-            return expression();
-        } catch (ParseError error) {
-            return null;
-        }
+        this(TokenSource.of(tokens));
     }
 
     /**
-     * 表达式解析的入口点
+     * 构造方法
      *
-     * @return 解析后的表达式抽象语法树
+     * @param tokens Token 来源（如紧凑的 TokenBuffer）
      */
-    private Expr expression() {
-        return ternary();
+    Parser(TokenSource tokens) {
+        this(tokens, ExprFactory.OBJECTS);
     }
 
     /**
-     * 解析三元表达式
-     * 语法规则：ternary → equality ( "?" expression ":" expression )? ;
+     * 构造方法
      *
-     * @return 三元表达式的抽象语法树
+     * @param tokens  Token 来源（如紧凑的 TokenBuffer）
+     * @param factory AST 节点工厂（如扁平的 ExprArena）
      */
-    private Expr ternary() {
-        Expr expr = equality();
-
-        if (match(QUESTION)) {
-            Expr exprIfTrue = expression();
-            consume(COLON, "Expect ':' after then branch.");
-            Expr exprIfFalse = expression();
-            expr = new Expr.Ternary(expr, exprIfTrue, exprIfFalse);
-        }
+    Parser(TokenSource tokens, ExprFactory factory) {
+        this.tokens = tokens;
+        this.factory = factory;
+    }
 
-        return expr;
+    Expr parse() {
+        try {
+            return expression();
+        } catch (ParseError error) {
+            return null;
+        }
     }
 
     /**
-     * 解析相等性表达式
-     * 语法规则：equality → comparison ( ( "!=" | "==" ) comparison )* ;
+     * 错误恢复模式下解析整个 Token 序列
+     * 语法规则：program → ( expression ";"? )* EOF ;
+     * 遇到语法错误时报告并调用 synchronize() 跳到下一个语句边界继续解析，
+     * 一次解析就能报告所有语法错误
      *
-     * @return 相等性表达式的抽象语法树
+     * @return 解析成功的表达式（出错的部分被跳过）
      */
-    private Expr equality() {
-        Expr expr = comparison();
-
-        while (match(BANG_EQUAL, EQUAL_EQUAL)) {
-            Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
+    List<Expr> parseAll() {
+        List<Expr> expressions = new ArrayList<>();
+        while (!isAtEnd()) {
+            try {
+                expressions.add(expression());
+                match(SEMICOLON);
+            } catch (ParseError error) {
+                synchronize();
+            }
         }
-
-        return expr;
+        return expressions;
     }
 
     /**
-     * 解析比较表达式
-     * 语法规则：comparison → term ( ( ">" | ">=" | "<" | "<=" ) term )* ;
+     * 表达式解析的入口点
+     * 语法规则：
+     * expression → ternary ;
+     * ternary    → binary ( "?" expression ":" expression )? ;
+     * binary     → unary ( operator unary )* ;
+     * unary      → ( "!" | "-" ) unary | primary ;
+     * primary    → NUMBER | STRING | "true" | "false" | "null" | "(" expression ")" ;
+     *
+     * 用显式栈代替递归下降：还没有读完的一元运算符、左操作数和运算符、括号、三元表达式的条件和分支
+     * 都作为帧压在栈上，嵌套深度只受堆大小限制。
+     * 二元运算符按优先级爬升：读到运算符时先归约栈顶优先级不低于它的二元帧，因此都是左结合的。
+     * 节点的创建顺序、报错的位置和信息都与递归下降的写法相同
      *
-     * @return 比较表达式的抽象语法树
+     * @return 解析后的表达式抽象语法树
      */
-    private Expr comparison() {
-        Expr expr = term();
-
-        while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
+    private Expr expression() {
+        clearFrames();
+        operand:
+        while (true) {
+            // 前缀：一元运算符和左括号入栈，直到读到字面量
+            while (true) {
+                if (match(UNARY_OPERATORS)) {
+                    push(UNARY_FRAME, null, previous());
+                } else if (match(LEFT_PAREN)) {
+                    push(GROUPING_FRAME, null, null);
+                } else {
+                    break;
+                }
+            }
+            Expr expr = primary();
+
+            // 后缀：归约已完成的部分，直到需要读下一个操作数
+            while (true) {
+                // unary → ( "!" | "-" ) unary
+                while (depth > 0 && frameKinds[depth - 1] == UNARY_FRAME) {
+                    depth--;
+                    expr = factory.unary(frameOperators[depth], expr);
+                    frameOperators[depth] = null;
+                }
+
+                int precedence = PRECEDENCE[tokens.type(current).ordinal()];
+                if (precedence > 0) {
+                    expr = reduceBinary(expr, precedence);
+                    advance();
+                    push(BINARY_FRAME, expr, previous());
+                    continue operand;
+                }
+
+                expr = reduceBinary(expr, EQUALITY);
+                if (match(QUESTION)) {
+                    push(CONDITION_FRAME, expr, null);
+                    continue operand;
+                }
+
+                // 一个完整的 expression 结束，交给外层的括号或三元表达式
+                while (true) {
+                    if (depth == 0) return expr;
+                    int top = depth - 1;
+                    if (frameKinds[top] == GROUPING_FRAME) {
+                        consume(RIGHT_PAREN, "Expect ')' after expression.");
+                        depth--;
+                        // 分组是 primary，继续处理外层的一元和二元运算符
+                        expr = factory.grouping(expr);
+                        break;
+                    }
+                    if (frameKinds[top] == CONDITION_FRAME) {
+                        consume(COLON, "Expect ':' after then branch.");
+                        frameKinds[top] = ELSE_FRAME;
+                        frameThens[top] = expr;
+                        continue operand;
+                    }
+                    // ELSE_FRAME：else 分支结束，三元表达式本身也是一个完整的 expression
+                    depth--;
+                    expr = factory.ternary(frameExprs[depth], frameThens[depth], expr);
+                    frameExprs[depth] = null;
+                    frameThens[depth] = null;
+                }
+            }
         }
-
-        return expr;
     }
 
     /**
-     * 解析项表达式（加减法）
-     * 语法规则：term → factor ( ( "+" | "-" ) factor )* ;
+     * 归约栈顶优先级不低于 minPrecedence 的二元帧
      *
-     * @return 项表达式的抽象语法树
+     * @param right         最右边的操作数
+     * @param minPrecedence 最低优先级
+     * @return 归约后的表达式
      */
-    private Expr term() {
-        Expr expr = factor();
-
-        while (match(MINUS, PLUS)) {
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
+    private Expr reduceBinary(Expr right, int minPrecedence) {
+        while (depth > 0 && frameKinds[depth - 1] == BINARY_FRAME
+                && PRECEDENCE[frameOperators[depth - 1].type.ordinal()] >= minPrecedence) {
+            depth--;
+            right = factory.binary(frameExprs[depth], frameOperators[depth], right);
+            frameExprs[depth] = null;
+            frameOperators[depth] = null;
         }
-
-        return expr;
+        return right;
     }
 
     /**
-     * 解析因子表达式（乘除法）
-     * 语法规则：factor → unary ( ( "/" | "*" ) unary )* ;
+     * 解析基本表达式中的字面量（括号由 expression() 处理）
+     * 语法规则：primary → NUMBER | STRING | "true" | "false" | "null" ;
      *
-     * @return 因子表达式的抽象语法树
+     * @return 字面量的抽象语法树
      */
-    private Expr factor() {
-        Expr expr = unary();
+    private Expr primary() {
+        if (match(FALSE)) return factory.literal(false);
+        if (match(TRUE)) return factory.literal(true);
+        if (match(NULL)) return factory.literal(null);
 
-        while (match(SLASH, STAR)) {
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+        if (match(LITERALS)) {
+            return factory.literal(tokens.literal(current - 1));
         }
 
-        return expr;
+        throw error(peek(), "Expect expression.");
     }
 
     /**
-     * 解析一元表达式
-     * 语法规则：unary → ( "!" | "-" ) unary | primary ;
+     * 压入一个帧
      *
-     * @return 一元表达式的抽象语法树
+     * @param kind     帧类型
+     * @param expr     左操作数或三元表达式的条件
+     * @param operator 运算符
      */
-    private Expr unary() {
-        if (match(BANG, MINUS)) {
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
+    private void push(byte kind, Expr expr, Token operator) {
+        if (depth == frameKinds.length) {
+            int capacity = depth * 2;
+            frameKinds = Arrays.copyOf(frameKinds, capacity);
+            frameExprs = Arrays.copyOf(frameExprs, capacity);
+            frameThens = Arrays.copyOf(frameThens, capacity);
+            frameOperators = Arrays.copyOf(frameOperators, capacity);
         }
-
-        return primary();
+        frameKinds[depth] = kind;
+        frameExprs[depth] = expr;
+        frameOperators[depth] = operator;
+        depth++;
     }
 
     /**
-     * 解析基本表达式
-     * 语法规则：primary → NUMBER | STRING | "true" | "false" | "null" | "(" expression ")" ;
-     *
-     * @return 基本表达式的抽象语法树
+     * 清空帧栈（上一次解析可能因语法错误中途退出）
      */
-    private Expr primary() {
-        if (match(FALSE)) return new Expr.Literal(false);
-        if (match(TRUE)) return new Expr.Literal(true);
-        if (match(NULL)) return new Expr.Literal(null);
-
-        if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
-        }
-
-        if (match(LEFT_PAREN)) {
-            Expr expr = expression();
-            consume(RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
-        }
-
-        throw error(peek(), "Expect expression.");
+    private void clearFrames() {
+        Arrays.fill(frameExprs, 0, depth, null);
+        Arrays.fill(frameThens, 0, depth, null);
+        Arrays.fill(frameOperators, 0, depth, null);
+        depth = 0;
     }
 
     /**
@@ -176,10 +299,12 @@ class Parser {
      *
      * @param type    期望的 Token 类型
      * @param message 错误信息
-     * @return 消耗的 Token
      */
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
@@ -193,7 +318,7 @@ class Parser {
      */
     private ParseError error(Token token, String message) {
         Lox.error(token, message);
-        return new ParseError();
+        return ParseError.INSTANCE;
     }
 
     /**
@@ -205,11 +330,11 @@ class Parser {
         advance();
 
         while (!isAtEnd()) {
-            if (previous().type == SEMICOLON) {
+            if (tokens.type(current - 1) == SEMICOLON) {
                 return;
             }
 
-            switch (peek().type) {
+            switch (tokens.type(current)) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -226,22 +351,53 @@ class Parser {
     }
 
     /**
-     * 检查当前 Token 是否匹配指定类型
+     * 检查当前 Token 是否为指定类型
      * 如果匹配则前进到下一个 Token
      *
-     * @param types 要检查的 Token 类型列表
+     * @param type 要检查的 Token 类型
      * @return 如果匹配则返回 true，否则返回 false
      */
-    private boolean match(TokenType... types) {
-        for (TokenType type : types) {
-            if (check(type)) {
-                advance();
-                return true;
-            }
+    private boolean match(TokenType type) {
+        if (check(type)) {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 检查当前 Token 是否属于指定的类型集合
+     * 如果匹配则前进到下一个 Token
+     *
+     * @param types 由 mask() 生成的类型集合
+     * @return 如果匹配则返回 true，否则返回 false
+     */
+    private boolean match(long types) {
+        if (isAtEnd()) {
+            return false;
+        }
+        if ((types >>> tokens.type(current).ordinal() & 1) != 0) {
+            advance();
+            return true;
         }
         return false;
     }
 
+    /**
+     * 生成 Token 类型集合（按 TokenType 序号置位的 long）
+     * 在类初始化时预先计算，解析时不再分配可变参数数组
+     *
+     * @param types Token 类型列表
+     * @return 类型集合
+     */
+    private static long mask(TokenType... types) {
+        long mask = 0;
+        for (TokenType type : types) {
+            mask |= 1L << type.ordinal();
+        }
+        return mask;
+    }
+
     /**
      * 检查当前 Token 是否为指定类型
      * 不消耗 Token
@@ -253,19 +409,17 @@ class Parser {
         if (isAtEnd()) {
             return false;
         }
-        return peek().type == type;
+        return tokens.type(current) == type;
     }
 
     /**
      * 前进到下一个 Token
-     *
-     * @return 之前的 Token
+     * 只移动位置，需要 Token 对象时再通过 previous() 获取
      */
-    private Token advance() {
+    private void advance() {
         if (!isAtEnd()) {
             current++;
         }
-        return previous();
     }
 
     /**
@@ -274,7 +428,7 @@ class Parser {
      * @return 如果到达末尾则返回 true，否则返回 false
      */
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return tokens.type(current) == EOF;
     }
 
     /**
@@ -284,7 +438,7 @@ class Parser {
      * @return 当前 Token
      */
     private Token peek() {
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
     /**
@@ -293,9 +447,19 @@ class Parser {
      * @return 前一个 Token
      */
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 
-    private static class ParseError extends RuntimeException {
+    /**
+     * 解析错误信号
+     * 只用于跳出递归下降，错误信息已经通过 Lox.error 报告，
+     * 所以使用预先分配的单例，不记录调用栈，也不记录被抑制的异常
+     */
+    private static final class ParseError extends RuntimeException {
+        static final ParseError INSTANCE = new ParseError();
+
+        private ParseError() {
+            super(null, null, false, false);
+        }
     }
 }
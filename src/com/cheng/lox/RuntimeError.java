@@ -0,0 +1,19 @@
+package com.cheng.lox;
+
+/**
+ * 运行时错误
+ * 由 Interpreter 在运算的操作数类型不正确时抛出，由 Lox 报告
+ */
+class RuntimeError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 出错的运算符（无法定位时为 null）
+     */
+    final Token token;
+
+    RuntimeError(Token token, String message) {
+        super(message);
+        this.token = token;
+    }
+}
@@ -1,9 +1,8 @@
 package com.cheng.lox;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.IntPredicate;
 
 import static com.cheng.lox.TokenType.*;
 
@@ -13,38 +12,15 @@ import static com.cheng.lox.TokenType.*;
  * 词法分析器
  * 负责将源代码字符串转换为Token序列
  */
-class Scanner {
-    private static final Map<String, TokenType> keywords;
-
-    // 关键字映射
-    static {
-        keywords = new HashMap<>();
-        // keywords.put("and", AND);
-        // keywords.put("or", OR);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("null", NULL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
-    }
-
+class Scanner implements Lexer {
     /**
-     * 源代码字符串
+     * 源代码（String 或内存映射文件的字节视图）
      */
-    private final String source;
+    private final CharSequence source;
     /**
-     * 生成的Token列表
+     * 生成的Token缓冲区
      */
-    private final List<Token> tokens = new ArrayList<>();
+    private final TokenBuffer tokens;
     /**
      * 当前正在扫描的Token的起始位置
      */
@@ -57,14 +33,19 @@ class Scanner {
      * 当前行号
      */
     private int line = 1;
+    /**
+     * 延迟报告的词法错误，为 null 时直接通过 Lox.error 报告
+     */
+    private List<LexError> deferredErrors;
 
     /**
      * 构造函数
      *
-     * @param source 源代码字符串
+     * @param source 源代码
      */
-    Scanner(String source) {
+    Scanner(CharSequence source) {
         this.source = source;
+        this.tokens = new TokenBuffer(source);
     }
 
     /**
@@ -73,6 +54,17 @@ class Scanner {
      * @return Token列表
      */
     List<Token> scanTokens() {
+        return scanBuffer().toList();
+    }
+
+    /**
+     * 扫描所有Token到紧凑缓冲区
+     * Token的原始文本不会立即生成
+     *
+     * @return Token缓冲区
+     */
+    @Override
+    public TokenBuffer scanBuffer() {
         // 循环扫描直到文件结束
         while (!isAtEnd()) {
             // 重置起始位置，准备扫描下一个Token
@@ -81,10 +73,101 @@ class Scanner {
         }
 
         // 添加文件结束符Token
-        tokens.add(new Token(EOF, "", null, line));
+        tokens.add(EOF, current, 0, line, null);
         return tokens;
     }
 
+    /**
+     * 扫描下一个Token
+     * 用于按需拉取，缓冲区每次都会被清空，到达文件末尾后一直返回EOF
+     *
+     * @return 下一个Token
+     */
+    @Override
+    public Token nextToken() {
+        tokens.clear();
+        while (tokens.size() == 0 && !isAtEnd()) {
+            start = current;
+            scanToken();
+        }
+
+        if (tokens.size() == 0) {
+            tokens.add(EOF, current, 0, line, null);
+        }
+        return tokens.token(0);
+    }
+
+    /**
+     * 扫描源代码的一段区间（并行扫描时使用）
+     * 从 from 开始扫描，直到下一个Token的起始位置不小于 to 为止；
+     * 跨越 to 的Token（如多行字符串）会被完整扫描，不添加EOF，错误先记录下来不报告
+     *
+     * @param from 起始位置
+     * @param to   结束位置
+     * @param line 起始位置所在的行号
+     * @return 这一段的Token缓冲区
+     */
+    TokenBuffer scanRange(int from, int to, int line) {
+        this.current = from;
+        this.line = line;
+        this.deferredErrors = new ArrayList<>();
+        while (current < to && !isAtEnd()) {
+            start = current;
+            scanToken();
+        }
+        return tokens;
+    }
+
+    /**
+     * 从指定位置重新扫描（增量扫描时使用）
+     * 每扫描出一个Token就用它的结束位置询问 sync，返回 true 时停止；到达文件末尾时添加EOF
+     *
+     * @param from 起始位置（必须位于两个Token之间）
+     * @param line 起始位置所在的行号
+     * @param sync 是否已经与旧的Token序列重新同步
+     * @return 新扫描出的Token缓冲区
+     */
+    TokenBuffer rescan(int from, int line, IntPredicate sync) {
+        this.current = from;
+        this.line = line;
+        while (!isAtEnd()) {
+            int size = tokens.size();
+            start = current;
+            scanToken();
+            if (tokens.size() > size && sync.test(current)) return tokens;
+        }
+
+        tokens.add(EOF, current, 0, this.line, null);
+        return tokens;
+    }
+
+    /**
+     * @return 当前扫描位置
+     */
+    int position() {
+        return current;
+    }
+
+    /**
+     * @return 当前行号
+     */
+    int line() {
+        return line;
+    }
+
+    /**
+     * @return 延迟报告的词法错误
+     */
+    List<LexError> deferredErrors() {
+        return deferredErrors;
+    }
+
+    @Override
+    public List<LexError> deferErrors() {
+        if (deferredErrors == null) deferredErrors = new ArrayList<>();
+        return deferredErrors;
+    }
+
     /**
      * 扫描单个Token
      */
@@ -148,14 +231,14 @@ class Scanner {
                 if (match('&')) {
                     addToken(AND);
                 } else {
-                    Lox.error(line, "Unexpected character: '&'");
+                    error("Unexpected character: '&'");
                 }
                 break;
             case '|':
                 if (match('|')) {
                     addToken(OR);
                 } else {
-                    Lox.error(line, "Unexpected character: '|'");
+                    error("Unexpected character: '|'");
                 }
                 break;
 
@@ -189,8 +272,12 @@ class Scanner {
                     number();
                 } else if (isAlpha(c)) {
                     identifier();
+                } else if (c >= 0x80 && source instanceof ByteSource) {
+                    // 字节视图中的非 ASCII 字符：跳过整个 UTF-8 编码，按解码后的字符报告
+                    current = ((ByteSource) source).charEnd(start);
+                    error("Unexpected character." + source.subSequence(start, current));
                 } else {
-                    Lox.error(line, "Unexpected character." + c);
+                    error("Unexpected character." + c);
                 }
                 break;
         }
@@ -242,10 +329,21 @@ class Scanner {
      * @param literal 字面量值
      */
     private void addToken(TokenType type, Object literal) {
-        // 提取当前Token的文本
-        String text = source.substring(start, current);
-        // 创建并添加Token到列表
-        tokens.add(new Token(type, text, literal, line));
+        // 只记录Token的位置，原始文本按需截取
+        tokens.add(type, start, current - start, line, literal);
+    }
+
+    /**
+     * 报告词法错误
+     *
+     * @param message 错误信息
+     */
+    private void error(String message) {
+        if (deferredErrors != null) {
+            deferredErrors.add(new LexError(line, message));
+        } else {
+            Lox.error(line, message);
+        }
     }
 
     /**
@@ -313,13 +411,18 @@ class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string");
+            // 与 DfaScanner 一致：只报告错误，不生成Token
+            error("Unterminated string");
+            return;
         }
 
         // 读取"关闭字符串
         advance();
 
-        addToken(STRING, str.toString());
+        // 字节视图中逐字节读出的内容需要按 UTF-8 解码
+        String value = str.toString();
+        if (source instanceof ByteSource) value = ByteSource.decodeUtf8(value);
+        addToken(STRING, value);
     }
 
     /**
@@ -370,9 +473,8 @@ class Scanner {
                 advance();
         }
 
-        // 创建数字Token，字面量为Double类型
-        double value = Double.parseDouble(source.substring(start, current));
-        addToken(NUMBER, value);
+        // 创建数字Token，字面量为Double类型，直接从源代码中读取数值
+        addToken(NUMBER, NumberLiteral.parse(source, start, current));
     }
 
     /**
@@ -382,12 +484,76 @@ class Scanner {
         while (isAlphaNumeric(peek()))
             advance();
 
-        // 标识符中挑出关键字
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null)
-            type = IDENTIFIER;
-        addToken(type);
+        // 标识符中挑出关键字，直接比较源代码中的字符，不截取字符串
+        addToken(keyword());
+    }
+
+    /**
+     * 识别关键字
+     * 先按首字符（必要时再按第二个字符）分支，再逐字符比较剩余部分
+     *
+     * @return 关键字类型，不是关键字时为 IDENTIFIER
+     */
+    private TokenType keyword() {
+        switch (source.charAt(start)) {
+            case 'e':
+                return checkKeyword(1, "lse", ELSE);
+            case 'f':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'a':
+                            return checkKeyword(2, "lse", FALSE);
+                        case 'o':
+                            return checkKeyword(2, "r", FOR);
+                        case 'u':
+                            return checkKeyword(2, "n", FUN);
+                    }
+                }
+                break;
+            case 'i':
+                return checkKeyword(1, "f", IF);
+            case 'n':
+                return checkKeyword(1, "ull", NULL);
+            case 'o':
+                return checkKeyword(1, "r", OR);
+            case 'p':
+                return checkKeyword(1, "rint", PRINT);
+            case 'r':
+                return checkKeyword(1, "eturn", RETURN);
+            case 's':
+                return checkKeyword(1, "uper", SUPER);
+            case 't':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'h':
+                            return checkKeyword(2, "is", THIS);
+                        case 'r':
+                            return checkKeyword(2, "ue", TRUE);
+                    }
+                }
+                break;
+            case 'v':
+                return checkKeyword(1, "ar", VAR);
+            case 'w':
+                return checkKeyword(1, "hile", WHILE);
+        }
+        return IDENTIFIER;
+    }
+
+    /**
+     * 比较标识符的剩余部分是否与关键字一致
+     *
+     * @param offset 已经比较过的字符数
+     * @param rest   关键字的剩余部分
+     * @param type   关键字类型
+     * @return 一致时为关键字类型，否则为 IDENTIFIER
+     */
+    private TokenType checkKeyword(int offset, String rest, TokenType type) {
+        if (current - start != offset + rest.length()) return IDENTIFIER;
+        for (int i = 0; i < rest.length(); i++) {
+            if (source.charAt(start + offset + i) != rest.charAt(i)) return IDENTIFIER;
+        }
+        return type;
     }
 
     /**
@@ -410,4 +576,17 @@ class Scanner {
 
         // System.out.println(source.substring(start, current));
     }
+
+    /**
+     * 延迟报告的词法错误
+     */
+    static final class LexError {
+        final int line;
+        final String message;
+
+        LexError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+    }
 }
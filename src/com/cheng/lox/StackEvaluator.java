@@ -0,0 +1,317 @@
+package com.cheng.lox;
+
+import java.util.Arrays;
+
+/**
+ * 用显式栈求值的树遍历解释器，由 Interpreter 用于嵌套很深的子表达式
+ * 语义与 Interpreter 相同，嵌套再深也不会栈溢出，但比递归的写法慢约 30%
+ *
+ * 与 BytecodeCompiler 一样用显式栈代替递归：
+ * 任务栈中放待求值的节点和子节点求值完后要做的运算，三元表达式的条件求值完后才把选中的分支入栈，
+ * 另一个分支不会被求值。
+ * 值栈分为 numbers 和 values 两个数组，数字只存放在 numbers 中（values 中对应位置为 NUMBER），
+ * 中间结果不创建 Double 对象，只有整个表达式的结果需要装箱一次。
+ * 两个操作数都求值之后再做类型检查，因此求值顺序和报错与逐层装箱的写法完全相同
+ */
+final class StackEvaluator implements Expr.Visitor<Void> {
+    /**
+     * 对节点求值
+     */
+    private static final byte EVALUATE = 0;
+    /**
+     * 操作数求值完：做一元运算
+     */
+    private static final byte UNARY = 1;
+    /**
+     * 操作数求值完：做二元运算
+     */
+    private static final byte BINARY = 2;
+    /**
+     * 左操作数求值完：右操作数是字面量，直接入栈后做二元运算
+     */
+    private static final byte BINARY_LITERAL = 3;
+    /**
+     * 条件求值完：选择三元表达式的分支
+     */
+    private static final byte BRANCH = 4;
+
+    /**
+     * values 中的标记：值是数字，存放在 numbers 的同一位置
+     */
+    private static final Object NUMBER = new Object();
+
+    /**
+     * 任务栈：节点和对它要做的动作
+     */
+    private Expr[] work = new Expr[16];
+    private byte[] actions = new byte[16];
+    private int workCount = 0;
+
+    /**
+     * 值栈
+     */
+    private double[] numbers = new double[16];
+    private Object[] values = new Object[16];
+    private int valueCount = 0;
+
+    /**
+     * 对表达式求值
+     *
+     * @param expr 表达式
+     * @return 值（数字为 Double）
+     * @throws RuntimeError 操作数类型不正确时
+     */
+    Object evaluate(Expr expr) {
+        workCount = 0;
+        valueCount = 0;
+        try {
+            Expr next = expr;
+            while (next != null) {
+                // 沿左侧的子节点一直向下，右侧的子节点和之后要做的运算入栈
+                while (next != null) {
+                    if (next instanceof Expr.Literal) {
+                        pushLiteral(((Expr.Literal) next).value);
+                        next = null;
+                    } else if (next instanceof Expr.Binary) {
+                        Expr.Binary binary = (Expr.Binary) next;
+                        if (binary.right instanceof Expr.Literal) {
+                            push(binary, BINARY_LITERAL);
+                        } else {
+                            push(binary, BINARY);
+                            push(binary.right, EVALUATE);
+                        }
+                        next = binary.left;
+                    } else if (next instanceof Expr.Grouping) {
+                        next = ((Expr.Grouping) next).expression;
+                    } else if (next instanceof Expr.Unary) {
+                        push(next, UNARY);
+                        next = ((Expr.Unary) next).right;
+                    } else if (next instanceof Expr.Ternary) {
+                        push(next, BRANCH);
+                        next = ((Expr.Ternary) next).condition;
+                    } else {
+                        // 其他节点（如 ExprArena.Node）通过访问者展开
+                        next.accept(this);
+                        next = null;
+                    }
+                }
+
+                // 做完已经就绪的运算，直到遇到下一个待求值的节点
+                while (next == null && workCount > 0) {
+                    int top = --workCount;
+                    Expr item = work[top];
+                    work[top] = null;
+                    switch (actions[top]) {
+                        case EVALUATE:
+                            next = item;
+                            break;
+                        case UNARY:
+                            unary((Expr.Unary) item);
+                            break;
+                        case BINARY:
+                            binary((Expr.Binary) item);
+                            break;
+                        case BINARY_LITERAL:
+                            pushLiteral(((Expr.Literal) ((Expr.Binary) item).right).value);
+                            binary((Expr.Binary) item);
+                            break;
+                        default:
+                            next = branch((Expr.Ternary) item);
+                            break;
+                    }
+                }
+            }
+            return values[0] == NUMBER ? (Object) numbers[0] : values[0];
+        } finally {
+            // 出错时任务栈和值栈中可能还有剩余，不让它们一直被引用
+            Arrays.fill(work, 0, workCount, null);
+            Arrays.fill(values, 0, valueCount, null);
+        }
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        push(expr, UNARY);
+        push(expr.right, EVALUATE);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        push(expr, BINARY);
+        push(expr.right, EVALUATE);
+        push(expr.left, EVALUATE);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        push(expr.expression, EVALUATE);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        pushLiteral(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        push(expr, BRANCH);
+        push(expr.condition, EVALUATE);
+        return null;
+    }
+
+    /**
+     * 一元运算，操作数在栈顶
+     *
+     * @param expr 一元表达式
+     */
+    private void unary(Expr.Unary expr) {
+        int top = valueCount - 1;
+        if (expr.operator.type == TokenType.MINUS) {
+            if (values[top] != NUMBER) throw new RuntimeError(expr.operator, "Operand must be a number.");
+            numbers[top] = -numbers[top];
+        } else {
+            values[top] = !isTruthy(top);
+        }
+    }
+
+    /**
+     * 二元运算，两个操作数在栈顶，结果放回左操作数的位置
+     *
+     * @param expr 二元表达式
+     */
+    private void binary(Expr.Binary expr) {
+        int r = --valueCount;
+        int l = r - 1;
+        boolean leftNumber = values[l] == NUMBER;
+        boolean rightNumber = values[r] == NUMBER;
+        double left = numbers[l];
+        double right = numbers[r];
+        Object rightValue = values[r];
+        values[r] = null;
+
+        switch (expr.operator.type) {
+            case PLUS:
+                if (leftNumber && rightNumber) {
+                    numbers[l] = left + right;
+                } else if (values[l] instanceof String && rightValue instanceof String) {
+                    values[l] = (String) values[l] + rightValue;
+                } else {
+                    throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+                }
+                break;
+            case MINUS:
+                checkNumberOperands(expr.operator, leftNumber, rightNumber);
+                numbers[l] = left - right;
+                break;
+            case STAR:
+                checkNumberOperands(expr.operator, leftNumber, rightNumber);
+                numbers[l] = left * right;
+                break;
+            case SLASH:
+                checkNumberOperands(expr.operator, leftNumber, rightNumber);
+                numbers[l] = left / right;
+                break;
+            case GREATER:
+                checkNumberOperands(expr.operator, leftNumber, rightNumber);
+                values[l] = left > right;
+                break;
+            case GREATER_EQUAL:
+                checkNumberOperands(expr.operator, leftNumber, rightNumber);
+                values[l] = left >= right;
+                break;
+            case LESS:
+                checkNumberOperands(expr.operator, leftNumber, rightNumber);
+                values[l] = left < right;
+                break;
+            case LESS_EQUAL:
+                checkNumberOperands(expr.operator, leftNumber, rightNumber);
+                values[l] = left <= right;
+                break;
+            case EQUAL_EQUAL:
+                values[l] = isEqual(left, leftNumber, values[l], right, rightNumber, rightValue);
+                break;
+            case BANG_EQUAL:
+                values[l] = !isEqual(left, leftNumber, values[l], right, rightNumber, rightValue);
+                break;
+            default:
+                throw new RuntimeError(expr.operator, "Unknown operator.");
+        }
+    }
+
+    /**
+     * 取出栈顶的条件，选择要求值的分支
+     *
+     * @param expr 三元表达式
+     * @return 选中的分支
+     */
+    private Expr branch(Expr.Ternary expr) {
+        boolean condition = isTruthy(--valueCount);
+        values[valueCount] = null;
+        return condition ? expr.exprIfTrue : expr.exprIfFalse;
+    }
+
+    private void push(Expr expr, byte action) {
+        if (workCount == work.length) {
+            work = Arrays.copyOf(work, workCount * 2);
+            actions = Arrays.copyOf(actions, workCount * 2);
+        }
+        work[workCount] = expr;
+        actions[workCount] = action;
+        workCount++;
+    }
+
+    /**
+     * 字面量入栈，数字拆箱后放入 numbers
+     */
+    private void pushLiteral(Object value) {
+        if (valueCount == values.length) {
+            numbers = Arrays.copyOf(numbers, valueCount * 2);
+            values = Arrays.copyOf(values, valueCount * 2);
+        }
+        if (value instanceof Double) {
+            numbers[valueCount] = (Double) value;
+            values[valueCount] = NUMBER;
+        } else {
+            values[valueCount] = value;
+        }
+        valueCount++;
+    }
+
+    /**
+     * 检查两个操作数都是数字
+     */
+    private static void checkNumberOperands(Token operator, boolean leftNumber, boolean rightNumber) {
+        if (!leftNumber || !rightNumber) {
+            throw new RuntimeError(operator, "Operands must be numbers.");
+        }
+    }
+
+    /**
+     * 相等判断，与 Objects.equals 一致：数字按 Double.equals 比较（NaN 等于 NaN，0 不等于 -0）
+     */
+    private static boolean isEqual(double left, boolean leftNumber, Object leftValue,
+                                   double right, boolean rightNumber, Object rightValue) {
+        if (leftNumber && rightNumber) {
+            return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+        }
+        if (leftNumber != rightNumber) return false;
+        if (leftValue == null) return rightValue == null;
+        return leftValue.equals(rightValue);
+    }
+
+    /**
+     * 真值判断：null 和 false 为假，其余（包括数字）为真
+     *
+     * @param index 值栈中的位置
+     */
+    private boolean isTruthy(int index) {
+        Object value = values[index];
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        return true;
+    }
+}
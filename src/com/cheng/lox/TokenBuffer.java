@@ -0,0 +1,410 @@
+package com.cheng.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 紧凑的 Token 缓冲区
+ * 用几个并行的 int 数组保存 Token 的类型、起始位置、长度和行号，字面量单独存放，
+ * 原始文本只在需要时才从源代码中截取，避免为每个 Token 创建对象和字符串
+ */
+final class TokenBuffer implements TokenSource {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int IDENTIFIER = TokenType.IDENTIFIER.ordinal();
+    /**
+     * 原始文本固定的 Token 类型对应的文本，按枚举序号索引，其余为 null
+     * 这些 Token 的文本不需要从源代码中截取（OR 有 "||" 和 "or" 两种写法，不在其中）
+     */
+    private static final String[] FIXED_LEXEMES = new String[TYPES.length];
+
+    static {
+        for (TokenType type : TYPES) {
+            FIXED_LEXEMES[type.ordinal()] = fixed(type);
+        }
+    }
+
+    /**
+     * 原始文本固定的 Token 类型对应的文本
+     * 用 switch 列出枚举常量，类型名写错时无法通过编译
+     *
+     * @param type Token 类型
+     * @return 固定的文本，不固定时为 null
+     */
+    private static String fixed(TokenType type) {
+        switch (type) {
+            case LEFT_PAREN:
+                return "(";
+            case RIGHT_PAREN:
+                return ")";
+            case LEFT_BRACE:
+                return "{";
+            case RIGHT_BRACE:
+                return "}";
+            case COMMA:
+                return ",";
+            case DOT:
+                return ".";
+            case MINUS:
+                return "-";
+            case PLUS:
+                return "+";
+            case SEMICOLON:
+                return ";";
+            case SLASH:
+                return "/";
+            case STAR:
+                return "*";
+            case QUESTION:
+                return "?";
+            case COLON:
+                return ":";
+            case BANG:
+                return "!";
+            case BANG_EQUAL:
+                return "!=";
+            case EQUAL:
+                return "=";
+            case EQUAL_EQUAL:
+                return "==";
+            case GREATER:
+                return ">";
+            case GREATER_EQUAL:
+                return ">=";
+            case LESS:
+                return "<";
+            case LESS_EQUAL:
+                return "<=";
+            case AND:
+                return "&&";
+            case ELSE:
+                return "else";
+            case FALSE:
+                return "false";
+            case FOR:
+                return "for";
+            case FUN:
+                return "fun";
+            case IF:
+                return "if";
+            case NULL:
+                return "null";
+            case PRINT:
+                return "print";
+            case RETURN:
+                return "return";
+            case SUPER:
+                return "super";
+            case THIS:
+                return "this";
+            case TRUE:
+                return "true";
+            case VAR:
+                return "var";
+            case WHILE:
+                return "while";
+            case EOF:
+                return "";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 源代码，用于按需截取原始文本（增量扫描时会被替换为编辑后的源代码）
+     */
+    private CharSequence source;
+    /**
+     * Token 类型（枚举序号）
+     */
+    private int[] types;
+    /**
+     * Token 在源代码中的起始位置
+     */
+    private int[] starts;
+    /**
+     * Token 原始文本长度
+     */
+    private int[] lengths;
+    /**
+     * Token 所在行号
+     */
+    private int[] lines;
+    /**
+     * Token 数量
+     */
+    private int size = 0;
+
+    /**
+     * 带字面量的 Token 下标（升序）
+     */
+    private int[] literalIndexes;
+    /**
+     * 与 literalIndexes 对应的字面量值
+     */
+    private Object[] literalValues;
+    /**
+     * 字面量数量
+     */
+    private int literalCount = 0;
+
+    /**
+     * 构造方法
+     *
+     * @param source 源代码
+     */
+    TokenBuffer(CharSequence source) {
+        this.source = source;
+        this.types = new int[INITIAL_CAPACITY];
+        this.starts = new int[INITIAL_CAPACITY];
+        this.lengths = new int[INITIAL_CAPACITY];
+        this.lines = new int[INITIAL_CAPACITY];
+        this.literalIndexes = new int[16];
+        this.literalValues = new Object[16];
+    }
+
+    /**
+     * 追加一个 Token
+     *
+     * @param type    Token 类型
+     * @param start   起始位置
+     * @param length  原始文本长度
+     * @param line    行号
+     * @param literal 字面量值，没有时为 null
+     */
+    void add(TokenType type, int start, int length, int line, Object literal) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+
+        if (literal != null) {
+            if (literalCount == literalIndexes.length) {
+                int capacity = literalCount * 2;
+                literalIndexes = Arrays.copyOf(literalIndexes, capacity);
+                literalValues = Arrays.copyOf(literalValues, capacity);
+            }
+            literalIndexes[literalCount] = size;
+            literalValues[literalCount] = literal;
+            literalCount++;
+        }
+        size++;
+    }
+
+    /**
+     * 追加另一个缓冲区中的全部 Token（并行扫描拼接时使用）
+     * 两个缓冲区必须基于同一份源代码
+     *
+     * @param other      另一个缓冲区
+     * @param lineOffset 行号偏移量
+     */
+    void append(TokenBuffer other, int lineOffset) {
+        int total = size + other.size;
+        if (total > types.length) {
+            int capacity = Math.max(total, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        System.arraycopy(other.types, 0, types, size, other.size);
+        System.arraycopy(other.starts, 0, starts, size, other.size);
+        System.arraycopy(other.lengths, 0, lengths, size, other.size);
+        for (int i = 0; i < other.size; i++) {
+            lines[size + i] = other.lines[i] + lineOffset;
+        }
+
+        int literals = literalCount + other.literalCount;
+        if (literals > literalIndexes.length) {
+            int capacity = Math.max(literals, literalIndexes.length * 2);
+            literalIndexes = Arrays.copyOf(literalIndexes, capacity);
+            literalValues = Arrays.copyOf(literalValues, capacity);
+        }
+        for (int i = 0; i < other.literalCount; i++) {
+            literalIndexes[literalCount + i] = other.literalIndexes[i] + size;
+        }
+        System.arraycopy(other.literalValues, 0, literalValues, literalCount, other.literalCount);
+
+        size = total;
+        literalCount = literals;
+    }
+
+    /**
+     * 用新扫描出的 Token 替换 [from, to) 区间的 Token（增量扫描时使用）
+     * 之后的 Token 整体平移起始位置和行号
+     *
+     * @param from        替换区间起点
+     * @param to          替换区间终点（不含）
+     * @param replacement 新的 Token，位置和行号已经是编辑后的值
+     * @param startDelta  之后 Token 起始位置的偏移量
+     * @param lineDelta   之后 Token 行号的偏移量
+     * @param source      编辑后的源代码
+     */
+    void splice(int from, int to, TokenBuffer replacement, int startDelta, int lineDelta, CharSequence source) {
+        int count = replacement.size;
+        int tail = size - to;
+        int total = from + count + tail;
+        if (total > types.length) {
+            int capacity = Math.max(total, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+
+        // 平移之后的 Token，再放入新的 Token
+        System.arraycopy(types, to, types, from + count, tail);
+        System.arraycopy(starts, to, starts, from + count, tail);
+        System.arraycopy(lengths, to, lengths, from + count, tail);
+        System.arraycopy(lines, to, lines, from + count, tail);
+        for (int i = from + count; i < total; i++) {
+            starts[i] += startDelta;
+            lines[i] += lineDelta;
+        }
+        System.arraycopy(replacement.types, 0, types, from, count);
+        System.arraycopy(replacement.starts, 0, starts, from, count);
+        System.arraycopy(replacement.lengths, 0, lengths, from, count);
+        System.arraycopy(replacement.lines, 0, lines, from, count);
+
+        // 字面量表同样替换 [from, to) 对应的部分
+        int low = literalPosition(from);
+        int high = literalPosition(to);
+        int literalTail = literalCount - high;
+        int literals = low + replacement.literalCount + literalTail;
+        if (literals > literalIndexes.length) {
+            int capacity = Math.max(literals, literalIndexes.length * 2);
+            literalIndexes = Arrays.copyOf(literalIndexes, capacity);
+            literalValues = Arrays.copyOf(literalValues, capacity);
+        }
+        int insertAt = low + replacement.literalCount;
+        System.arraycopy(literalIndexes, high, literalIndexes, insertAt, literalTail);
+        System.arraycopy(literalValues, high, literalValues, insertAt, literalTail);
+        for (int i = insertAt; i < literals; i++) {
+            literalIndexes[i] += count - (to - from);
+        }
+        for (int i = 0; i < replacement.literalCount; i++) {
+            literalIndexes[low + i] = replacement.literalIndexes[i] + from;
+            literalValues[low + i] = replacement.literalValues[i];
+        }
+        if (literals < literalCount) {
+            Arrays.fill(literalValues, literals, literalCount, null);
+        }
+
+        size = total;
+        literalCount = literals;
+        this.source = source;
+    }
+
+    /**
+     * 找到第一个下标不小于 index 的字面量在字面量表中的位置
+     *
+     * @param index Token 下标
+     * @return 字面量表中的位置
+     */
+    private int literalPosition(int index) {
+        int found = Arrays.binarySearch(literalIndexes, 0, literalCount, index);
+        return found >= 0 ? found : -found - 1;
+    }
+
+    /**
+     * 清空缓冲区，保留已分配的数组
+     */
+    void clear() {
+        Arrays.fill(literalValues, 0, literalCount, null);
+        size = 0;
+        literalCount = 0;
+    }
+
+    /**
+     * @return Token 数量
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return 源代码
+     */
+    CharSequence source() {
+        return source;
+    }
+
+    @Override
+    public TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int start(int index) {
+        return starts[index];
+    }
+
+    int length(int index) {
+        return lengths[index];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    @Override
+    public Object literal(int index) {
+        int found = Arrays.binarySearch(literalIndexes, 0, literalCount, index);
+        return found >= 0 ? literalValues[found] : null;
+    }
+
+    /**
+     * 获取原始文本固定的 Token 类型对应的文本
+     *
+     * @param type Token 类型
+     * @return 固定的文本，不固定时为 null
+     */
+    static String fixedLexeme(TokenType type) {
+        return FIXED_LEXEMES[type.ordinal()];
+    }
+
+    /**
+     * 按需截取 Token 的原始文本
+     * 运算符和关键字直接返回固定的文本，标识符的文本会被驻留，同名标识符共享同一个字符串
+     *
+     * @param index Token 下标
+     * @return 原始文本
+     */
+    String lexeme(int index) {
+        String fixed = FIXED_LEXEMES[types[index]];
+        if (fixed != null) return fixed;
+
+        String text = source.subSequence(starts[index], starts[index] + lengths[index]).toString();
+        return types[index] == IDENTIFIER ? text.intern() : text;
+    }
+
+    @Override
+    public Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index), lines[index]);
+    }
+
+    /**
+     * 转换为 Token 列表
+     *
+     * @return Token 列表
+     */
+    List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(size);
+        int nextLiteral = 0;
+        for (int i = 0; i < size; i++) {
+            Object literal = null;
+            if (nextLiteral < literalCount && literalIndexes[nextLiteral] == i) {
+                literal = literalValues[nextLiteral++];
+            }
+            tokens.add(new Token(type(i), lexeme(i), literal, lines[i]));
+        }
+        return tokens;
+    }
+}
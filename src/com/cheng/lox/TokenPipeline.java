@@ -0,0 +1,218 @@
+package com.cheng.lox;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 并发的扫描/解析流水线
+ * Scanner 在独立线程中运行，通过单生产者单消费者的无锁环形缓冲区把 Token 交给 Parser，
+ * 缓冲区写满时生产者等待（背压），为空时消费者等待
+ *
+ * 扫描线程不直接报告词法错误：扫描某个 Token 时产生的错误和它一起放进环形缓冲区，
+ * 由消费者第一次取到这个 Token 时报告，因此所有诊断都在解析线程中输出，顺序与 --stream 相同
+ */
+final class TokenPipeline implements TokenSource {
+    /**
+     * 环形缓冲区容量（必须是 2 的幂）
+     */
+    private static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+    /**
+     * 忙等多少次后改为短暂休眠
+     */
+    private static final int SPIN_LIMIT = 100;
+
+    private final Token[] ring = new Token[CAPACITY];
+    /**
+     * 与 ring 对应：扫描该槽位的 Token 时产生的词法错误，没有时为 null
+     */
+    private final Scanner.LexError[][] errors = new Scanner.LexError[CAPACITY][];
+    /**
+     * 扫描线程记录词法错误的列表（见 Lexer.deferErrors）
+     */
+    private final List<Scanner.LexError> scanErrors;
+    /**
+     * 生产者已经发布的 Token 数量
+     */
+    private final AtomicLong published = new AtomicLong();
+    /**
+     * 消费者已经不再需要的 Token 数量（这些槽位可以被覆盖）
+     */
+    private final AtomicLong released = new AtomicLong();
+    /**
+     * 消费者本地缓存的发布数量，减少对 published 的读取
+     */
+    private long visible = 0;
+    /**
+     * 消费者已经报告了词法错误的 Token 数量
+     */
+    private long reported = 0;
+
+    private final Thread producer;
+    private volatile boolean closed = false;
+    private volatile Throwable failure;
+
+    /**
+     * 构造方法，立即启动扫描线程
+     *
+     * @param scanner 词法分析器
+     */
+    TokenPipeline(Lexer scanner) {
+        this.scanErrors = scanner.deferErrors();
+        this.producer = new Thread(() -> produce(scanner), "lox-scanner");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    /**
+     * 生产者循环：扫描 Token 并发布到环形缓冲区
+     *
+     * @param scanner 词法分析器
+     */
+    private void produce(Lexer scanner) {
+        try {
+            long next = 0;
+            long free = 0;
+            while (true) {
+                Token token = scanner.nextToken();
+                if (closed) {
+                    // 消费者已经结束，继续扫描只是为了报告剩余的词法错误
+                    if (token.type == TokenType.EOF) return;
+                    continue;
+                }
+
+                int spins = 0;
+                while (next - free >= CAPACITY && !closed) {
+                    free = released.getAcquire();
+                    if (next - free >= CAPACITY) spins = backOff(spins);
+                }
+                if (closed) {
+                    // 槽位可能还没有被消费者取走，不再覆盖，错误留在 scanErrors 中
+                    if (token.type == TokenType.EOF) return;
+                    continue;
+                }
+                int slot = (int) next & MASK;
+                ring[slot] = token;
+                errors[slot] = takeErrors();
+                published.setRelease(++next);
+
+                if (token.type == TokenType.EOF) return;
+            }
+        } catch (Throwable e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * 取走扫描线程记录的词法错误
+     *
+     * @return 错误，没有时为 null
+     */
+    private Scanner.LexError[] takeErrors() {
+        if (scanErrors.isEmpty()) return null;
+        Scanner.LexError[] taken = scanErrors.toArray(new Scanner.LexError[0]);
+        scanErrors.clear();
+        return taken;
+    }
+
+    /**
+     * 结束流水线并等待扫描线程完成
+     * 剩余的源代码仍会被扫描，以便报告全部词法错误：
+     * 先报告已经发布但还没有被取到的 Token 带的错误，再报告之后扫描时产生的错误。
+     * 扫描线程抛出了异常时（包括 Parser 结束后才扫描到的部分），报告完错误后重新抛出，与顺序扫描一致
+     */
+    void close() {
+        closed = true;
+        try {
+            producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        report(published.get());
+        for (Scanner.LexError error : scanErrors) {
+            Lox.error(error.line, error.message);
+        }
+        scanErrors.clear();
+        if (failure != null) throw rethrow();
+    }
+
+    /**
+     * 在消费者线程中重新抛出扫描线程的异常
+     * RuntimeException 和 Error 原样抛出，与不使用流水线时相同
+     *
+     * @return 仅用于 throw 语句，实际不会返回
+     */
+    private RuntimeException rethrow() {
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        return new IllegalStateException("Scanner thread failed.", failure);
+    }
+
+    /**
+     * 报告 [reported, end) 之间的 Token 带的词法错误
+     *
+     * @param end 结束位置
+     */
+    private void report(long end) {
+        for (; reported < end; reported++) {
+            int slot = (int) reported & MASK;
+            Scanner.LexError[] slotErrors = errors[slot];
+            if (slotErrors == null) continue;
+            errors[slot] = null;
+            for (Scanner.LexError error : slotErrors) {
+                Lox.error(error.line, error.message);
+            }
+        }
+    }
+
+    @Override
+    public TokenType type(int index) {
+        return token(index).type;
+    }
+
+    @Override
+    public Object literal(int index) {
+        return token(index).literal;
+    }
+
+    @Override
+    public Token token(int index) {
+        long oldest = released.get();
+        if (index < oldest) {
+            throw new IllegalStateException("Token " + index + " has already been released.");
+        }
+
+        int spins = 0;
+        while (index >= visible) {
+            visible = published.getAcquire();
+            if (index < visible) break;
+            if (failure != null) throw rethrow();
+            spins = backOff(spins);
+        }
+
+        if (index >= reported) report(index + 1L);
+        Token token = ring[index & MASK];
+        // Parser 只会回看前一个 Token，更早的槽位交还给生产者
+        if (index - 1 > oldest) {
+            released.setRelease(index - 1);
+        }
+        return token;
+    }
+
+    /**
+     * 等待策略：先忙等，再短暂休眠
+     *
+     * @param spins 已经等待的次数
+     * @return 新的等待次数
+     */
+    private static int backOff(int spins) {
+        if (spins < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(1_000);
+        }
+        return spins + 1;
+    }
+}
@@ -0,0 +1,58 @@
+package com.cheng.lox;
+
+import java.util.List;
+
+/**
+ * Parser 读取 Token 的来源
+ * 按下标访问，Parser 只会读取当前 Token 和前一个 Token
+ */
+interface TokenSource {
+    /**
+     * 获取 Token 类型
+     *
+     * @param index Token 下标
+     * @return Token 类型
+     */
+    TokenType type(int index);
+
+    /**
+     * 获取 Token 的字面量
+     *
+     * @param index Token 下标
+     * @return 字面量值，没有时为 null
+     */
+    Object literal(int index);
+
+    /**
+     * 获取完整的 Token 对象（用于构造 AST 节点和报告错误）
+     *
+     * @param index Token 下标
+     * @return Token 对象
+     */
+    Token token(int index);
+
+    /**
+     * 把 Token 列表包装成 TokenSource
+     *
+     * @param tokens Token 列表
+     * @return 对应的 TokenSource
+     */
+    static TokenSource of(List<Token> tokens) {
+        return new TokenSource() {
+            @Override
+            public TokenType type(int index) {
+                return tokens.get(index).type;
+            }
+
+            @Override
+            public Object literal(int index) {
+                return tokens.get(index).literal;
+            }
+
+            @Override
+            public Token token(int index) {
+                return tokens.get(index);
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.cheng.lox;
+
+/**
+ * 按需拉取的 Token 流
+ * Parser 读到哪里，Scanner 就扫描到哪里，只保留一个很小的前后窗口，
+ * 已经消耗的 Token 可以被垃圾回收，Token 占用的内存与源代码大小无关
+ */
+final class TokenStream implements TokenSource {
+    /**
+     * 窗口大小（必须是 2 的幂）
+     * Parser 只会回看前一个 Token，这里留出余量
+     */
+    private static final int WINDOW = 4;
+    private static final int MASK = WINDOW - 1;
+
+    private final Lexer scanner;
+    /**
+     * 最近拉取的 Token，按下标取模存放
+     */
+    private final Token[] window = new Token[WINDOW];
+    /**
+     * 已经拉取的 Token 数量
+     */
+    private int filled = 0;
+
+    /**
+     * 构造方法
+     *
+     * @param scanner 词法分析器
+     */
+    TokenStream(Lexer scanner) {
+        this.scanner = scanner;
+    }
+
+    @Override
+    public TokenType type(int index) {
+        return token(index).type;
+    }
+
+    @Override
+    public Object literal(int index) {
+        return token(index).literal;
+    }
+
+    @Override
+    public Token token(int index) {
+        if (index < filled - WINDOW) {
+            throw new IllegalStateException("Token " + index + " has already been released.");
+        }
+        while (filled <= index) {
+            window[filled & MASK] = scanner.nextToken();
+            filled++;
+        }
+        return window[index & MASK];
+    }
+}
@@ -0,0 +1,215 @@
+package com.cheng.lox;
+
+import java.util.Arrays;
+
+/**
+ * 字节码虚拟机
+ * 在一个循环中按操作码分派执行 Chunk，不再递归访问表达式树
+ *
+ * 值栈是一个 long[]，每个值按 Value 做 NaN-boxing：数字、布尔值和 nil 直接存放在栈中，
+ * 字符串等对象放在对象表 objects 中，栈中只存下标。数字运算全程不装箱，类型检查只是位运算
+ *
+ * 语义与 Interpreter 相同：两个操作数都求值之后再检查类型，报错的信息和行号也相同
+ */
+final class VM {
+    private long[] stack = new long[64];
+    /**
+     * 对象表：开头是 Chunk 的常量，之后是运行中产生的对象（拼接出的字符串）
+     */
+    private Object[] objects = new Object[16];
+    private int objectCount = 0;
+
+    /**
+     * 编译并执行表达式
+     *
+     * @param expr 表达式
+     * @return 值（数字为 Double）
+     * @throws RuntimeError 操作数类型不正确时
+     */
+    Object interpret(Expr expr) {
+        return run(BytecodeCompiler.compile(expr));
+    }
+
+    /**
+     * 执行字节码块
+     *
+     * @param chunk 字节码块
+     * @return 值（数字为 Double）
+     * @throws RuntimeError 操作数类型不正确时
+     */
+    Object run(Chunk chunk) {
+        if (stack.length < chunk.maxStack) stack = new long[chunk.maxStack];
+        Object[] constants = chunk.constants;
+        if (objects.length < constants.length) objects = new Object[constants.length];
+        System.arraycopy(constants, 0, objects, 0, constants.length);
+        objectCount = constants.length;
+        try {
+            return Value.toObject(execute(chunk), objects);
+        } finally {
+            // 不让对象表中的字符串一直被引用
+            Arrays.fill(objects, 0, objectCount, null);
+            objectCount = 0;
+        }
+    }
+
+    private long execute(Chunk chunk) {
+        final byte[] code = chunk.code;
+        final long[] stack = this.stack;
+        int ip = 0;
+        int sp = 0;
+
+        while (true) {
+            byte opcode = code[ip++];
+            switch (opcode) {
+                case Chunk.OP_NUMBER:
+                    stack[sp++] = chunk.numbers[code[ip++] & 0xff];
+                    break;
+                case Chunk.OP_NUMBER_LONG:
+                    stack[sp++] = chunk.numbers[readInt(code, ip)];
+                    ip += 4;
+                    break;
+                case Chunk.OP_CONSTANT:
+                    stack[sp++] = Value.object(code[ip++] & 0xff);
+                    break;
+                case Chunk.OP_CONSTANT_LONG:
+                    stack[sp++] = Value.object(readInt(code, ip));
+                    ip += 4;
+                    break;
+                case Chunk.OP_NIL:
+                    stack[sp++] = Value.NIL;
+                    break;
+                case Chunk.OP_TRUE:
+                    stack[sp++] = Value.TRUE;
+                    break;
+                case Chunk.OP_FALSE:
+                    stack[sp++] = Value.FALSE;
+                    break;
+                case Chunk.OP_NEGATE:
+                    if (!Value.isNumber(stack[sp - 1])) {
+                        throw error(chunk, ip - 1, TokenType.MINUS, "Operand must be a number.");
+                    }
+                    stack[sp - 1] = Value.number(-Value.asNumber(stack[sp - 1]));
+                    break;
+                case Chunk.OP_NOT:
+                    stack[sp - 1] = Value.bool(Value.isFalsey(stack[sp - 1]));
+                    break;
+                case Chunk.OP_ADD: {
+                    sp--;
+                    long a = stack[sp - 1];
+                    long b = stack[sp];
+                    if (Value.isNumber(a) && Value.isNumber(b)) {
+                        stack[sp - 1] = Value.number(Value.asNumber(a) + Value.asNumber(b));
+                    } else if (isString(a) && isString(b)) {
+                        stack[sp - 1] = newObject((String) objects[Value.handle(a)] + objects[Value.handle(b)]);
+                    } else {
+                        throw error(chunk, ip - 1, TokenType.PLUS, "Operands must be two numbers or two strings.");
+                    }
+                    break;
+                }
+                case Chunk.OP_SUBTRACT:
+                    sp--;
+                    checkNumbers(chunk, ip - 1, TokenType.MINUS, stack, sp);
+                    stack[sp - 1] = Value.number(Value.asNumber(stack[sp - 1]) - Value.asNumber(stack[sp]));
+                    break;
+                case Chunk.OP_MULTIPLY:
+                    sp--;
+                    checkNumbers(chunk, ip - 1, TokenType.STAR, stack, sp);
+                    stack[sp - 1] = Value.number(Value.asNumber(stack[sp - 1]) * Value.asNumber(stack[sp]));
+                    break;
+                case Chunk.OP_DIVIDE:
+                    sp--;
+                    checkNumbers(chunk, ip - 1, TokenType.SLASH, stack, sp);
+                    stack[sp - 1] = Value.number(Value.asNumber(stack[sp - 1]) / Value.asNumber(stack[sp]));
+                    break;
+                case Chunk.OP_GREATER:
+                    sp--;
+                    checkNumbers(chunk, ip - 1, TokenType.GREATER, stack, sp);
+                    stack[sp - 1] = Value.bool(Value.asNumber(stack[sp - 1]) > Value.asNumber(stack[sp]));
+                    break;
+                case Chunk.OP_GREATER_EQUAL:
+                    sp--;
+                    checkNumbers(chunk, ip - 1, TokenType.GREATER_EQUAL, stack, sp);
+                    stack[sp - 1] = Value.bool(Value.asNumber(stack[sp - 1]) >= Value.asNumber(stack[sp]));
+                    break;
+                case Chunk.OP_LESS:
+                    sp--;
+                    checkNumbers(chunk, ip - 1, TokenType.LESS, stack, sp);
+                    stack[sp - 1] = Value.bool(Value.asNumber(stack[sp - 1]) < Value.asNumber(stack[sp]));
+                    break;
+                case Chunk.OP_LESS_EQUAL:
+                    sp--;
+                    checkNumbers(chunk, ip - 1, TokenType.LESS_EQUAL, stack, sp);
+                    stack[sp - 1] = Value.bool(Value.asNumber(stack[sp - 1]) <= Value.asNumber(stack[sp]));
+                    break;
+                case Chunk.OP_EQUAL:
+                    sp--;
+                    stack[sp - 1] = Value.bool(isEqual(stack[sp - 1], stack[sp]));
+                    break;
+                case Chunk.OP_NOT_EQUAL:
+                    sp--;
+                    stack[sp - 1] = Value.bool(!isEqual(stack[sp - 1], stack[sp]));
+                    break;
+                case Chunk.OP_JUMP_IF_FALSE:
+                    sp--;
+                    ip = Value.isFalsey(stack[sp]) ? readInt(code, ip) : ip + 4;
+                    break;
+                case Chunk.OP_JUMP:
+                    ip = readInt(code, ip);
+                    break;
+                case Chunk.OP_RETURN:
+                    return stack[sp - 1];
+                default:
+                    throw new IllegalStateException("Unknown opcode: " + opcode);
+            }
+        }
+    }
+
+    private static int readInt(byte[] code, int offset) {
+        return (code[offset] & 0xff) << 24
+                | (code[offset + 1] & 0xff) << 16
+                | (code[offset + 2] & 0xff) << 8
+                | (code[offset + 3] & 0xff);
+    }
+
+    /**
+     * 把对象放入对象表
+     *
+     * @return 对象的值
+     */
+    private long newObject(Object object) {
+        if (objectCount == objects.length) objects = Arrays.copyOf(objects, objectCount * 2);
+        objects[objectCount] = object;
+        return Value.object(objectCount++);
+    }
+
+    private boolean isString(long value) {
+        return Value.isObject(value) && objects[Value.handle(value)] instanceof String;
+    }
+
+    /**
+     * 相等判断，与 Interpreter 一致
+     * 数字、布尔值和 nil 的表示是唯一的，直接比较位；对象比较对象表中的内容
+     */
+    private boolean isEqual(long a, long b) {
+        if (a == b) return true;
+        if (!Value.isObject(a) || !Value.isObject(b)) return false;
+        return objects[Value.handle(a)].equals(objects[Value.handle(b)]);
+    }
+
+    /**
+     * 检查栈顶的两个操作数（sp - 1 和 sp）都是数字
+     */
+    private static void checkNumbers(Chunk chunk, int offset, TokenType type, long[] stack, int sp) {
+        if (!Value.isNumber(stack[sp - 1]) || !Value.isNumber(stack[sp])) {
+            throw error(chunk, offset, type, "Operands must be numbers.");
+        }
+    }
+
+    /**
+     * 构造运行时错误，运算符 Token 按行号表还原
+     */
+    private static RuntimeError error(Chunk chunk, int offset, TokenType type, String message) {
+        Token operator = new Token(type, TokenBuffer.fixedLexeme(type), null, chunk.line(offset));
+        return new RuntimeError(operator, message);
+    }
+}
@@ -0,0 +1,92 @@
+package com.cheng.lox;
+
+/**
+ * NaN-boxing 的值表示
+ * 把数字、布尔值、nil 和对象句柄都放进一个 long，值栈和常量池可以直接用 long[]，不需要装箱
+ *
+ * 数字就是 double 的位模式（NaN 统一为 Double.doubleToLongBits 的规范形式）；
+ * 指数全为 1 且最高两位尾数也为 1 的 quiet NaN（QNAN）不会由规范化的数字产生，用来存放其他值：
+ * <pre>
+ * nil    QNAN | 1
+ * false  QNAN | 2
+ * true   QNAN | 3
+ * 对象   SIGN | QNAN | 句柄（对象表中的下标）
+ * </pre>
+ * 因为 NaN 已经规范化，两个数字相等（按 Double.equals：NaN 等于 NaN，0 不等于 -0）当且仅当两个 long 相等
+ */
+final class Value {
+    private static final long SIGN = 0x8000000000000000L;
+    private static final long QNAN = 0x7ffc000000000000L;
+    private static final long OBJECT = SIGN | QNAN;
+
+    static final long NIL = QNAN | 1;
+    static final long FALSE = QNAN | 2;
+    static final long TRUE = QNAN | 3;
+
+    private Value() {
+    }
+
+    /**
+     * 数字的值
+     *
+     * @param value 数字
+     * @return 值
+     */
+    static long number(double value) {
+        return Double.doubleToLongBits(value);
+    }
+
+    static boolean isNumber(long value) {
+        return (value & QNAN) != QNAN;
+    }
+
+    static double asNumber(long value) {
+        return Double.longBitsToDouble(value);
+    }
+
+    static long bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /**
+     * 对象的值
+     *
+     * @param handle 对象表中的下标
+     * @return 值
+     */
+    static long object(int handle) {
+        return OBJECT | handle;
+    }
+
+    static boolean isObject(long value) {
+        return (value & OBJECT) == OBJECT;
+    }
+
+    /**
+     * 对象值在对象表中的下标
+     */
+    static int handle(long value) {
+        return (int) value;
+    }
+
+    /**
+     * 假值判断：nil 和 false 为假，其余为真
+     */
+    static boolean isFalsey(long value) {
+        return value == NIL || value == FALSE;
+    }
+
+    /**
+     * 还原为 Interpreter 使用的表示（数字为 Double，nil 为 null）
+     *
+     * @param value   值
+     * @param objects 对象表
+     * @return 对象
+     */
+    static Object toObject(long value, Object[] objects) {
+        if (isNumber(value)) return asNumber(value);
+        if (isObject(value)) return objects[handle(value)];
+        if (value == NIL) return null;
+        return value == TRUE;
+    }
+}
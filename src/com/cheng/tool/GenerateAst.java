@@ -8,6 +8,10 @@ import java.util.List;
 /**
  * AST（抽象语法树）代码生成器
  * 用于根据类型定义自动生成对应的 Java 代码
+ *
+ * 默认生成带 accept(Visitor) 双重分派的抽象类 Expr；
+ * 使用 --records [基类名] [输出目录] 时改为生成 sealed interface 和 record 子类型（默认名为 ExprNode，与 Expr 共存，默认输出到 src/com/cheng/lox），
+ * 使用者可以直接对节点类型做模式匹配（Java 17 中为 instanceof 模式，Java 21 起可以用穷尽的 switch）
  */
 public class GenerateAst {
     /** 缩进空格 */
@@ -18,13 +22,21 @@ public class GenerateAst {
      * 用于生成表达式的 AST 类
      */
     public static void main(String[] args) throws IOException {
-        defineAst("./src/com/cheng/lox", "Expr", Arrays.asList(
+        List<String> types = Arrays.asList(
                 "Unary    : Token operator, Expr right",
                 "Binary   : Expr left, Token operator, Expr right",
                 "Grouping : Expr expression",
                 "Literal  : Object value",
                 "Ternary  : Expr condition, Expr exprIfTrue, Expr exprIfFalse"
-        ));
+        );
+
+        if (args.length > 0 && args[0].equals("--records")) {
+            String baseName = args.length > 1 ? args[1] : "ExprNode";
+            String outputDir = args.length > 2 ? args[2] : "./src/com/cheng/lox";
+            defineRecordAst(outputDir, baseName, types);
+        } else {
+            defineAst("./src/com/cheng/lox", "Expr", types);
+        }
     }
 
     /**
@@ -120,4 +132,39 @@ public class GenerateAst {
         writer.println(tabSpace + "}");
         writer.println();
     }
+
+    /**
+     * 定义 sealed interface 形式的 AST：基接口只允许列出的 record 子类型实现
+     * 类型定义中的 Expr 会被替换为 baseName
+     * @param outputDir 输出目录
+     * @param baseName 基接口名称
+     * @param types 类型定义列表
+     * @throws IOException 当文件写入失败时
+     */
+    private static void defineRecordAst(String outputDir, String baseName, List<String> types) throws IOException {
+        String path = outputDir + "/" + baseName + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("package com.cheng.lox;");
+        writer.println();
+
+        // permits 列出所有子类型，switch 模式匹配可以据此检查是否穷尽
+        StringBuilder permits = new StringBuilder();
+        for (String type : types) {
+            if (permits.length() > 0) permits.append(", ");
+            permits.append(baseName).append(".").append(type.split(":")[0].trim());
+        }
+        writer.println("sealed interface " + baseName + " permits " + permits + " {");
+
+        for (String type : types) {
+            String className = type.split(":")[0].trim();
+            String fields = type.split(":")[1].trim().replaceAll("\\bExpr\\b", baseName);
+            writer.println(tabSpace + "record " + className + "(" + fields + ") implements " + baseName + " {");
+            writer.println(tabSpace + "}");
+            writer.println();
+        }
+
+        writer.println("}");
+        writer.close();
+    }
 }
@@ -0,0 +1,523 @@
+package com.cheng.tool;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 词法分析 DFA 生成器
+ * 根据 Token 规则（正则表达式）构造 NFA，再用子集构造法转换成 DFA，
+ * 生成 DfaTables.java 中的字符分类表、状态转移表和接受状态表，由 DfaScanner 驱动
+ *
+ * 规则格式为 "名称 : 表达式"，多个规则同时匹配时取最长的一个，长度相同时取靠前的规则
+ * 表达式语法：'...' 字面量，[...] 字符集（支持 ^ 和 a-z），. 任意字符，( ) | * + ?，
+ * 空格只起分隔作用
+ */
+public class GenerateScanner {
+    /** 缩进空格 */
+    static String tabSpace = "    ";
+
+    /** 字符集大小：ASCII 字符加上一个代表所有非 ASCII 字符的符号 */
+    private static final int SYMBOLS = 129;
+    private static final int NON_ASCII = 128;
+
+    /**
+     * 不对应 TokenType 的动作
+     */
+    private static final List<String> ACTIONS = Arrays.asList(
+            "TOKEN", "SKIP", "NEWLINE", "STRING", "NUMBER", "UNEXPECTED", "UNTERMINATED_STRING");
+
+    /**
+     * 主方法
+     * 用于生成 Lox 的词法分析表
+     */
+    public static void main(String[] args) throws IOException {
+        defineScanner("./src/com/cheng/lox", "DfaTables", Arrays.asList(
+                "LEFT_PAREN          : '('",
+                "RIGHT_PAREN         : ')'",
+                "LEFT_BRACE          : '{'",
+                "RIGHT_BRACE         : '}'",
+                "COMMA               : ','",
+                "DOT                 : '.'",
+                "MINUS               : '-'",
+                "PLUS                : '+'",
+                "SEMICOLON           : ';'",
+                "STAR                : '*'",
+                "QUESTION            : '?'",
+                "COLON               : ':'",
+                "BANG                : '!'",
+                "BANG_EQUAL          : '!='",
+                "EQUAL               : '='",
+                "EQUAL_EQUAL         : '=='",
+                "GREATER             : '>'",
+                "GREATER_EQUAL       : '>='",
+                "LESS                : '<'",
+                "LESS_EQUAL          : '<='",
+                "AND                 : '&&'",
+                "OR                  : '||'",
+                "SLASH               : '/'",
+                "ELSE                : 'else'",
+                "FALSE               : 'false'",
+                "FOR                 : 'for'",
+                "FUN                 : 'fun'",
+                "IF                  : 'if'",
+                "NULL                : 'null'",
+                "OR                  : 'or'",
+                "PRINT               : 'print'",
+                "RETURN              : 'return'",
+                "SUPER               : 'super'",
+                "THIS                : 'this'",
+                "TRUE                : 'true'",
+                "VAR                 : 'var'",
+                "WHILE               : 'while'",
+                "IDENTIFIER          : [a-zA-Z_] [a-zA-Z_0-9]*",
+                "NUMBER              : [0-9]+ ('.' [0-9]+)?",
+                "STRING              : '\"' ([^\"\\\\] | '\\\\' .)* '\"' | '`' ([^`\\\\] | '\\\\' .)* '`'",
+                "UNTERMINATED_STRING : '\"' ([^\"\\\\] | '\\\\' .)* '\\\\'? | '`' ([^`\\\\] | '\\\\' .)* '\\\\'?",
+                "UNEXPECTED          : '&' | '|'",
+                "NEWLINE             : '\\n'",
+                "SKIP                : [ \\r\\t]+",
+                "SKIP                : '//' [^\\n]*",
+                "SKIP                : '/*' ([^*] | '*'+ [^*/])* '*'+ '/'",
+                "SKIP                : '/*' ([^*] | '*'+ [^*/])* '*'*"
+        ));
+    }
+
+    /**
+     * 生成词法分析表
+     *
+     * @param outputDir 输出目录
+     * @param className 类名
+     * @param rules     规则列表
+     * @throws IOException 当文件写入失败时
+     */
+    private static void defineScanner(String outputDir, String className, List<String> rules) throws IOException {
+        Nfa nfa = new Nfa();
+        int start = nfa.newState();
+        String[] names = new String[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            String rule = rules.get(i);
+            int colon = rule.indexOf(':');
+            names[i] = rule.substring(0, colon).trim();
+            int[] fragment = new RegexParser(nfa, rule.substring(colon + 1)).parse();
+            nfa.epsilon(start, fragment[0]);
+            nfa.accept.put(fragment[1], i);
+        }
+
+        Dfa dfa = new Dfa(nfa, start);
+
+        String path = outputDir + "/" + className + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("package com.cheng.lox;");
+        writer.println();
+        writer.println("/**");
+        writer.println(" * 词法分析 DFA 表（由 com.cheng.tool.GenerateScanner 生成，不要手动修改）");
+        writer.println(" * " + dfa.stateCount + " 个状态，" + dfa.classCount + " 个字符类别");
+        writer.println(" */");
+        writer.println("final class " + className + " {");
+
+        // 动作编号
+        for (int i = 0; i < ACTIONS.size(); i++) {
+            writer.println(tabSpace + "static final int " + ACTIONS.get(i) + " = " + i + ";");
+        }
+        writer.println();
+
+        writer.println(tabSpace + "static final int CLASS_COUNT = " + dfa.classCount + ";");
+        writer.println(tabSpace + "static final int NON_ASCII_CLASS = " + dfa.classes[NON_ASCII] + ";");
+        writer.println();
+
+        // 字符分类表
+        writer.println(tabSpace + "static final byte[] CHAR_CLASSES = {");
+        for (int c = 0; c < NON_ASCII; c += 16) {
+            StringBuilder row = new StringBuilder(tabSpace + tabSpace);
+            for (int i = c; i < c + 16; i++) {
+                row.append(dfa.classes[i]).append(i + 1 < NON_ASCII ? ", " : "");
+            }
+            writer.println(row.toString().replaceAll("\\s+$", ""));
+        }
+        writer.println(tabSpace + "};");
+        writer.println();
+
+        // 状态转移表，-1 表示没有转移
+        writer.println(tabSpace + "static final short[] TRANSITIONS = {");
+        for (int s = 0; s < dfa.stateCount; s++) {
+            StringBuilder row = new StringBuilder(tabSpace + tabSpace);
+            for (int c = 0; c < dfa.classCount; c++) {
+                row.append(dfa.transitions.get(s)[c]);
+                if (s + 1 < dfa.stateCount || c + 1 < dfa.classCount) row.append(", ");
+            }
+            writer.println(row.toString().replaceAll("\\s+$", ""));
+        }
+        writer.println(tabSpace + "};");
+        writer.println();
+
+        // 接受状态对应的规则，-1 表示不是接受状态
+        writer.println(tabSpace + "static final byte[] ACCEPT = {");
+        StringBuilder accept = new StringBuilder(tabSpace + tabSpace);
+        for (int s = 0; s < dfa.stateCount; s++) {
+            accept.append(dfa.accept.get(s)).append(s + 1 < dfa.stateCount ? ", " : "");
+        }
+        writer.println(accept);
+        writer.println(tabSpace + "};");
+        writer.println();
+
+        // 规则对应的动作和 Token 类型
+        writer.println(tabSpace + "static final int[] RULE_ACTIONS = {");
+        for (int i = 0; i < names.length; i++) {
+            String action = ACTIONS.contains(names[i]) ? names[i] : "TOKEN";
+            writer.println(tabSpace + tabSpace + action + (i + 1 < names.length ? "," : ""));
+        }
+        writer.println(tabSpace + "};");
+        writer.println();
+
+        writer.println(tabSpace + "static final TokenType[] RULE_TYPES = {");
+        for (int i = 0; i < names.length; i++) {
+            String type = ACTIONS.contains(names[i]) && !names[i].equals("STRING") && !names[i].equals("NUMBER")
+                    ? "null" : "TokenType." + names[i];
+            writer.println(tabSpace + tabSpace + type + (i + 1 < names.length ? "," : ""));
+        }
+        writer.println(tabSpace + "};");
+        writer.println();
+
+        writer.println(tabSpace + "private " + className + "() {");
+        writer.println(tabSpace + "}");
+        writer.println("}");
+        writer.close();
+    }
+
+    /**
+     * 非确定有限自动机
+     * 每条边带一个字符集，字符集为 null 的边是 ε 边
+     */
+    private static class Nfa {
+        final List<List<boolean[]>> sets = new ArrayList<>();
+        final List<List<Integer>> targets = new ArrayList<>();
+        /** 接受状态 → 规则编号 */
+        final Map<Integer, Integer> accept = new HashMap<>();
+
+        int newState() {
+            sets.add(new ArrayList<>());
+            targets.add(new ArrayList<>());
+            return sets.size() - 1;
+        }
+
+        void edge(int from, boolean[] set, int to) {
+            sets.get(from).add(set);
+            targets.get(from).add(to);
+        }
+
+        void epsilon(int from, int to) {
+            edge(from, null, to);
+        }
+    }
+
+    /**
+     * 规则表达式解析器（Thompson 构造）
+     * 每个解析方法返回一个 NFA 片段 {入口状态, 出口状态}
+     */
+    private static class RegexParser {
+        private final Nfa nfa;
+        private final String pattern;
+        private int current = 0;
+
+        RegexParser(Nfa nfa, String pattern) {
+            this.nfa = nfa;
+            this.pattern = pattern;
+        }
+
+        int[] parse() {
+            int[] fragment = alternation();
+            skipSpaces();
+            if (current < pattern.length()) {
+                throw new IllegalArgumentException("Unexpected '" + pattern.charAt(current) + "' in " + pattern);
+            }
+            return fragment;
+        }
+
+        /**
+         * alternation → concatenation ( "|" concatenation )* ;
+         */
+        private int[] alternation() {
+            int[] fragment = concatenation();
+            while (match('|')) {
+                int[] right = concatenation();
+                int in = nfa.newState();
+                int out = nfa.newState();
+                nfa.epsilon(in, fragment[0]);
+                nfa.epsilon(in, right[0]);
+                nfa.epsilon(fragment[1], out);
+                nfa.epsilon(right[1], out);
+                fragment = new int[]{in, out};
+            }
+            return fragment;
+        }
+
+        /**
+         * concatenation → repetition* ;
+         */
+        private int[] concatenation() {
+            int in = nfa.newState();
+            int[] fragment = {in, in};
+            while (true) {
+                skipSpaces();
+                if (current >= pattern.length() || peek() == '|' || peek() == ')') return fragment;
+                int[] next = repetition();
+                nfa.epsilon(fragment[1], next[0]);
+                fragment = new int[]{fragment[0], next[1]};
+            }
+        }
+
+        /**
+         * repetition → atom ( "*" | "+" | "?" )* ;
+         */
+        private int[] repetition() {
+            int[] fragment = atom();
+            while (current < pattern.length() && "*+?".indexOf(peek()) >= 0) {
+                char op = pattern.charAt(current++);
+                int in = nfa.newState();
+                int out = nfa.newState();
+                nfa.epsilon(in, fragment[0]);
+                nfa.epsilon(fragment[1], out);
+                if (op != '+') nfa.epsilon(in, out);
+                if (op != '?') nfa.epsilon(fragment[1], fragment[0]);
+                fragment = new int[]{in, out};
+            }
+            return fragment;
+        }
+
+        /**
+         * atom → "'" literal "'" | "[" set "]" | "." | "(" alternation ")" ;
+         */
+        private int[] atom() {
+            char c = pattern.charAt(current++);
+            switch (c) {
+                case '\'': {
+                    int in = nfa.newState();
+                    int out = in;
+                    while (peek() != '\'') {
+                        int next = nfa.newState();
+                        nfa.edge(out, single(literalChar()), next);
+                        out = next;
+                    }
+                    current++;
+                    return new int[]{in, out};
+                }
+                case '[':
+                    return symbol(set());
+                case '.': {
+                    boolean[] any = new boolean[SYMBOLS];
+                    Arrays.fill(any, true);
+                    return symbol(any);
+                }
+                case '(': {
+                    int[] fragment = alternation();
+                    if (!match(')')) throw new IllegalArgumentException("Expect ')' in " + pattern);
+                    return fragment;
+                }
+                default:
+                    throw new IllegalArgumentException("Unexpected '" + c + "' in " + pattern);
+            }
+        }
+
+        /**
+         * 解析字符集，开头的 '[' 已经读取
+         *
+         * @return 字符集
+         */
+        private boolean[] set() {
+            boolean negate = peek() == '^';
+            if (negate) current++;
+            boolean[] set = new boolean[SYMBOLS];
+            while (peek() != ']') {
+                char from = literalChar();
+                char to = from;
+                if (peek() == '-' && pattern.charAt(current + 1) != ']') {
+                    current++;
+                    to = literalChar();
+                }
+                for (char c = from; c <= to; c++) set[c] = true;
+            }
+            current++;
+            if (negate) {
+                for (int i = 0; i < SYMBOLS; i++) set[i] = !set[i];
+            }
+            return set;
+        }
+
+        /**
+         * 读取一个字符，支持 \n \r \t 和 \ 加任意字符的转义
+         *
+         * @return 字符
+         */
+        private char literalChar() {
+            char c = pattern.charAt(current++);
+            if (c != '\\') return c;
+            char escaped = pattern.charAt(current++);
+            switch (escaped) {
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                default:
+                    return escaped;
+            }
+        }
+
+        private int[] symbol(boolean[] set) {
+            int in = nfa.newState();
+            int out = nfa.newState();
+            nfa.edge(in, set, out);
+            return new int[]{in, out};
+        }
+
+        private static boolean[] single(char c) {
+            boolean[] set = new boolean[SYMBOLS];
+            set[c] = true;
+            return set;
+        }
+
+        private char peek() {
+            return pattern.charAt(current);
+        }
+
+        private boolean match(char c) {
+            skipSpaces();
+            if (current < pattern.length() && peek() == c) {
+                current++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces() {
+            while (current < pattern.length() && pattern.charAt(current) == ' ') current++;
+        }
+    }
+
+    /**
+     * 确定有限自动机（子集构造）
+     * 字符先按它们在 NFA 中的行为划分成类别，转移表按类别索引
+     */
+    private static class Dfa {
+        /** 字符 → 类别 */
+        final int[] classes = new int[SYMBOLS];
+        int classCount;
+        int stateCount;
+        final List<short[]> transitions = new ArrayList<>();
+        final List<Integer> accept = new ArrayList<>();
+
+        Dfa(Nfa nfa, int start) {
+            defineClasses(nfa);
+
+            // 每个类别选一个代表字符
+            int[] representatives = new int[classCount];
+            for (int c = SYMBOLS - 1; c >= 0; c--) representatives[classes[c]] = c;
+
+            Map<BitSet, Integer> states = new LinkedHashMap<>();
+            List<BitSet> worklist = new ArrayList<>();
+            BitSet initial = closure(nfa, single(start));
+            states.put(initial, 0);
+            worklist.add(initial);
+
+            for (int i = 0; i < worklist.size(); i++) {
+                BitSet state = worklist.get(i);
+                short[] row = new short[classCount];
+                for (int k = 0; k < classCount; k++) {
+                    BitSet next = new BitSet();
+                    for (int s = state.nextSetBit(0); s >= 0; s = state.nextSetBit(s + 1)) {
+                        List<boolean[]> sets = nfa.sets.get(s);
+                        for (int e = 0; e < sets.size(); e++) {
+                            if (sets.get(e) != null && sets.get(e)[representatives[k]]) {
+                                next.set(nfa.targets.get(s).get(e));
+                            }
+                        }
+                    }
+                    if (next.isEmpty()) {
+                        row[k] = -1;
+                        continue;
+                    }
+                    next = closure(nfa, next);
+                    Integer index = states.get(next);
+                    if (index == null) {
+                        index = states.size();
+                        states.put(next, index);
+                        worklist.add(next);
+                    }
+                    row[k] = (short) (int) index;
+                }
+                transitions.add(row);
+
+                int rule = -1;
+                for (int s = state.nextSetBit(0); s >= 0; s = state.nextSetBit(s + 1)) {
+                    Integer r = nfa.accept.get(s);
+                    if (r != null && (rule < 0 || r < rule)) rule = r;
+                }
+                accept.add(rule);
+            }
+            stateCount = worklist.size();
+        }
+
+        /**
+         * 按字符所在的字符集组合划分类别
+         */
+        private void defineClasses(Nfa nfa) {
+            List<boolean[]> allSets = new ArrayList<>();
+            for (List<boolean[]> sets : nfa.sets) {
+                for (boolean[] set : sets) {
+                    if (set != null) allSets.add(set);
+                }
+            }
+
+            Map<BitSet, Integer> signatures = new HashMap<>();
+            for (int c = 0; c < SYMBOLS; c++) {
+                BitSet signature = new BitSet();
+                for (int i = 0; i < allSets.size(); i++) {
+                    if (allSets.get(i)[c]) signature.set(i);
+                }
+                Integer index = signatures.get(signature);
+                if (index == null) {
+                    index = signatures.size();
+                    signatures.put(signature, index);
+                }
+                classes[c] = index;
+            }
+            classCount = signatures.size();
+        }
+
+        private static BitSet single(int state) {
+            BitSet set = new BitSet();
+            set.set(state);
+            return set;
+        }
+
+        /**
+         * 求 ε 闭包
+         */
+        private static BitSet closure(Nfa nfa, BitSet states) {
+            BitSet result = (BitSet) states.clone();
+            List<Integer> stack = new ArrayList<>();
+            for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) stack.add(s);
+            while (!stack.isEmpty()) {
+                int s = stack.remove(stack.size() - 1);
+                List<boolean[]> sets = nfa.sets.get(s);
+                for (int e = 0; e < sets.size(); e++) {
+                    int target = nfa.targets.get(s).get(e);
+                    if (sets.get(e) == null && !result.get(target)) {
+                        result.set(target);
+                        stack.add(target);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.cheng.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 节点分派方式的基准：Expr 的访问者（accept 双重分派）、sealed record 上的 instanceof 模式链、预览版的 switch 模式匹配
+ * 三种求值器的语义相同（只含数字、比较和三元表达式，不会出错），对同一批表达式各求值 10 遍，比较耗时
+ *
+ * 依赖 GenerateAst --records 生成的 ExprNode，并使用 JDK 17 的预览特性，不和 test 下的程序一起编译：
+ * <pre>
+ * mkdir -p out/gen
+ * java -cp out com.cheng.tool.GenerateAst --records ExprNode out/gen
+ * javac -encoding UTF-8 --enable-preview --release 17 -d out/preview $(find src test-preview out/gen -name '*.java')
+ * java --enable-preview -Xmx2g -cp out/preview com.cheng.lox.DispatchBench
+ * </pre>
+ */
+public final class DispatchBench {
+    private static final String[] COMPARISONS = {"<", "<=", ">", ">=", "==", "!="};
+
+    private DispatchBench() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(3);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            sb.append(number(random, 9)).append(";\n");
+        }
+        List<Expr> exprs = new Parser(new Scanner(sb.toString()).scanBuffer()).parseAll();
+        List<ExprNode> nodes = new ArrayList<>(exprs.size());
+        int count = 0;
+        for (Expr expr : exprs) {
+            nodes.add(convert(expr));
+            count += size(expr);
+        }
+        System.out.println(exprs.size() + " exprs, " + count + " nodes");
+
+        VisitorEvaluator visitor = new VisitorEvaluator();
+        for (int round = 0; round < 8; round++) {
+            long t0 = System.nanoTime();
+            double visitorSum = 0;
+            for (int k = 0; k < 10; k++) {
+                for (Expr expr : exprs) visitorSum += sum(expr.accept(visitor));
+            }
+            long t1 = System.nanoTime();
+            double instanceofSum = 0;
+            for (int k = 0; k < 10; k++) {
+                for (ExprNode node : nodes) instanceofSum += sum(evalInstanceof(node));
+            }
+            long t2 = System.nanoTime();
+            double switchSum = 0;
+            for (int k = 0; k < 10; k++) {
+                for (ExprNode node : nodes) switchSum += sum(evalSwitch(node));
+            }
+            long t3 = System.nanoTime();
+            // 前几轮是预热
+            if (round < 3) continue;
+            boolean same = Double.compare(visitorSum, instanceofSum) == 0 && Double.compare(instanceofSum, switchSum) == 0;
+            System.out.printf("visitor %d ms  instanceof %d ms  switch %d ms%s%n",
+                    (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000, (t3 - t2) / 1_000_000, same ? "" : "  RESULTS DIFFER");
+        }
+    }
+
+    /**
+     * 访问者：通过 accept 双重分派
+     */
+    private static final class VisitorEvaluator implements Expr.Visitor<Object> {
+        @Override
+        public Object visitUnaryExpr(Expr.Unary expr) {
+            return unary(expr.operator.type, expr.right.accept(this));
+        }
+
+        @Override
+        public Object visitBinaryExpr(Expr.Binary expr) {
+            return binary(expr.operator.type, expr.left.accept(this), expr.right.accept(this));
+        }
+
+        @Override
+        public Object visitGroupingExpr(Expr.Grouping expr) {
+            return expr.expression.accept(this);
+        }
+
+        @Override
+        public Object visitLiteralExpr(Expr.Literal expr) {
+            return expr.value;
+        }
+
+        @Override
+        public Object visitTernaryExpr(Expr.Ternary expr) {
+            return isTruthy(expr.condition.accept(this)) ? expr.exprIfTrue.accept(this) : expr.exprIfFalse.accept(this);
+        }
+    }
+
+    /**
+     * instanceof 模式链，按出现频率排列
+     */
+    private static Object evalInstanceof(ExprNode node) {
+        if (node instanceof ExprNode.Binary b) {
+            return binary(b.operator().type, evalInstanceof(b.left()), evalInstanceof(b.right()));
+        }
+        if (node instanceof ExprNode.Literal l) return l.value();
+        if (node instanceof ExprNode.Unary u) return unary(u.operator().type, evalInstanceof(u.right()));
+        if (node instanceof ExprNode.Grouping g) return evalInstanceof(g.expression());
+        ExprNode.Ternary t = (ExprNode.Ternary) node;
+        return isTruthy(evalInstanceof(t.condition())) ? evalInstanceof(t.exprIfTrue()) : evalInstanceof(t.exprIfFalse());
+    }
+
+    /**
+     * switch 模式匹配（JDK 17 预览），通过 typeSwitch 引导方法分派
+     */
+    private static Object evalSwitch(ExprNode node) {
+        return switch (node) {
+            case ExprNode.Binary b -> binary(b.operator().type, evalSwitch(b.left()), evalSwitch(b.right()));
+            case ExprNode.Literal l -> l.value();
+            case ExprNode.Unary u -> unary(u.operator().type, evalSwitch(u.right()));
+            case ExprNode.Grouping g -> evalSwitch(g.expression());
+            case ExprNode.Ternary t ->
+                    isTruthy(evalSwitch(t.condition())) ? evalSwitch(t.exprIfTrue()) : evalSwitch(t.exprIfFalse());
+        };
+    }
+
+    private static Object unary(TokenType operator, Object right) {
+        return operator == TokenType.MINUS ? -(double) right : !isTruthy(right);
+    }
+
+    private static Object binary(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case EQUAL_EQUAL:
+                return left == null ? right == null : left.equals(right);
+            case BANG_EQUAL:
+                return left == null ? right != null : !left.equals(right);
+            case PLUS:
+                return (double) left + (double) right;
+            case MINUS:
+                return (double) left - (double) right;
+            case STAR:
+                return (double) left * (double) right;
+            case SLASH:
+                return (double) left / (double) right;
+            case GREATER:
+                return (double) left > (double) right;
+            case GREATER_EQUAL:
+                return (double) left >= (double) right;
+            case LESS:
+                return (double) left < (double) right;
+            case LESS_EQUAL:
+                return (double) left <= (double) right;
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        return true;
+    }
+
+    private static double sum(Object value) {
+        return value instanceof Double ? (Double) value : 0;
+    }
+
+    /**
+     * 把 Expr 转换为 sealed record 形式的 ExprNode
+     */
+    private static ExprNode convert(Expr expr) {
+        return ExprWalker.walk(expr, new ExprWalker.Visitor<ExprNode>() {
+            @Override
+            public ExprNode visitUnaryExpr(Expr.Unary unary, ExprNode right) {
+                return new ExprNode.Unary(unary.operator, right);
+            }
+
+            @Override
+            public ExprNode visitBinaryExpr(Expr.Binary binary, ExprNode left, ExprNode right) {
+                return new ExprNode.Binary(left, binary.operator, right);
+            }
+
+            @Override
+            public ExprNode visitGroupingExpr(Expr.Grouping grouping, ExprNode expression) {
+                return new ExprNode.Grouping(expression);
+            }
+
+            @Override
+            public ExprNode visitLiteralExpr(Expr.Literal literal) {
+                return new ExprNode.Literal(literal.value);
+            }
+
+            @Override
+            public ExprNode visitTernaryExpr(Expr.Ternary ternary, ExprNode condition, ExprNode exprIfTrue,
+                                             ExprNode exprIfFalse) {
+                return new ExprNode.Ternary(condition, exprIfTrue, exprIfFalse);
+            }
+        });
+    }
+
+    /**
+     * 节点个数
+     */
+    private static int size(Expr expr) {
+        return ExprWalker.walk(expr, new ExprWalker.Visitor<Integer>() {
+            @Override
+            public Integer visitUnaryExpr(Expr.Unary unary, Integer right) {
+                return right + 1;
+            }
+
+            @Override
+            public Integer visitBinaryExpr(Expr.Binary binary, Integer left, Integer right) {
+                return left + right + 1;
+            }
+
+            @Override
+            public Integer visitGroupingExpr(Expr.Grouping grouping, Integer expression) {
+                return expression + 1;
+            }
+
+            @Override
+            public Integer visitLiteralExpr(Expr.Literal literal) {
+                return 1;
+            }
+
+            @Override
+            public Integer visitTernaryExpr(Expr.Ternary ternary, Integer condition, Integer exprIfTrue,
+                                            Integer exprIfFalse) {
+                return condition + exprIfTrue + exprIfFalse + 1;
+            }
+        });
+    }
+
+    /**
+     * 随机的数字表达式：四则运算、取负、以比较为条件的三元表达式
+     */
+    private static String number(Random random, int depth) {
+        if (depth <= 0 || random.nextInt(5) == 0) return Integer.toString(random.nextInt(100));
+        switch (random.nextInt(5)) {
+            case 0:
+                return "(" + number(random, depth - 1) + ")";
+            case 1:
+                return "-" + number(random, depth - 1);
+            case 2:
+                return "(" + condition(random, depth - 1) + " ? " + number(random, depth - 1)
+                        + " : " + number(random, depth - 1) + ")";
+            default:
+                return number(random, depth - 1) + " " + "+-*/".charAt(random.nextInt(4)) + " " + number(random, depth - 1);
+        }
+    }
+
+    private static String condition(Random random, int depth) {
+        return (random.nextInt(4) == 0 ? "!" : "") + "(" + number(random, depth - 1) + " "
+                + COMPARISONS[random.nextInt(COMPARISONS.length)] + " " + number(random, depth - 1) + ")";
+    }
+}
@@ -0,0 +1,149 @@
+package com.cheng.lox;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+
+/**
+ * 扁平 AST 的基准：Expr 对象树与 ExprArena
+ * 对同一个很长的数字表达式输出：
+ * 解析后保留的堆（GC 之后的堆占用之差，折算为每个节点）、解析时每个节点分配的字节数，
+ * 以及把所有数字字面量加起来的一次遍历的耗时（取最快的一次）和分配的字节数：
+ * 对象树用 ExprWalker，ExprArena 分别经过适配器（ExprWalker 调用 accept）和直接在数组上的 walk
+ *
+ * 用法：java -cp out com.cheng.lox.ArenaBench [操作数的个数，默认 1000000]
+ */
+public final class ArenaBench {
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    /**
+     * 遍历的结果，避免遍历被优化掉
+     */
+    private static double sum = 0;
+
+    private ArenaBench() {
+    }
+
+    public static void main(String[] args) {
+        int terms = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String source = Corpus.arithmetic(new Random(1), terms);
+        TokenBuffer tokens = new Scanner(source).scanBuffer();
+
+        // 预热解析器
+        for (int i = 0; i < 5; i++) {
+            new Parser(tokens).parse();
+            new Parser(tokens, new ExprArena()).parse();
+        }
+
+        long before = usedHeap();
+        long allocated = allocated();
+        Expr tree = new Parser(tokens).parse();
+        long treeAllocated = allocated() - allocated;
+        long treeHeap = usedHeap() - before;
+
+        before = usedHeap();
+        // 按 Token 数预留容量，数组不需要扩容
+        ExprArena arena = new ExprArena(tokens.size());
+        allocated = allocated();
+        Expr root = new Parser(tokens, arena).parse();
+        long arenaAllocated = allocated() - allocated;
+        long arenaHeap = usedHeap() - before;
+
+        int nodes = arena.size();
+        System.out.printf("%d nodes%n", nodes);
+        System.out.printf("retained heap:  objects %5.1f B/node  arena %5.1f B/node%n",
+                treeHeap / (double) nodes, arenaHeap / (double) nodes);
+        System.out.printf("parse allocated: objects %5.1f B/node  arena %5.1f B/node%n",
+                treeAllocated / (double) nodes, arenaAllocated / (double) nodes);
+
+        SumLiterals objects = new SumLiterals();
+        SumLiterals adapter = new SumLiterals();
+        ExprArena.Walker walker = new ExprArena.Walker() {
+            @Override
+            public void visitUnary(int node, TokenType operator, int right) {
+            }
+
+            @Override
+            public void visitBinary(int node, int left, TokenType operator, int right) {
+            }
+
+            @Override
+            public void visitGrouping(int node, int expression) {
+            }
+
+            @Override
+            public void visitLiteral(int node, Object value) {
+                if (value instanceof Double) sum += (Double) value;
+            }
+
+            @Override
+            public void visitTernary(int node, int condition, int exprIfTrue, int exprIfFalse) {
+            }
+        };
+        for (int round = 0; round < 3; round++) {
+            report("objects ExprWalker", nodes, () -> ExprWalker.walk(tree, objects));
+            report("arena accept", nodes, () -> ExprWalker.walk(root, adapter));
+            report("arena walk", nodes, () -> arena.walk(root, walker));
+        }
+        System.out.println("checksum " + sum);
+    }
+
+    /**
+     * 遍历 10 次，输出最快的一次的耗时和平均每个节点分配的字节数
+     */
+    private static void report(String name, int nodes, Runnable traversal) {
+        long best = Long.MAX_VALUE;
+        long bytes = 0;
+        for (int i = 0; i < 10; i++) {
+            long allocated = allocated();
+            long start = System.nanoTime();
+            traversal.run();
+            best = Math.min(best, System.nanoTime() - start);
+            bytes = allocated() - allocated;
+        }
+        System.out.printf("%-20s %6.1f ms %6.1f B/node%n", name, best / 1e6, bytes / (double) nodes);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * 把所有数字字面量加起来，各方法都不返回结果，不会为结果分配对象
+     */
+    private static final class SumLiterals implements ExprWalker.Visitor<Void> {
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr, Void right) {
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr, Void left, Void right) {
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr, Void expression) {
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            if (expr.value instanceof Double) sum += (Double) expr.value;
+            return null;
+        }
+
+        @Override
+        public Void visitTernaryExpr(Expr.Ternary expr, Void condition, Void exprIfTrue, Void exprIfFalse) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.cheng.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 扁平 AST 的差分测试
+ * 同一个输入分别用 ExprFactory.OBJECTS 和 ExprArena 解析（错误恢复模式，一次解析多个表达式），比较：
+ * 语法错误、AstPrinter 通过适配器（accept）打印的语法树、ExprArena.walk 直接在数组上打印的语法树、
+ * Interpreter 求得的值或运行时错误（信息和行号），以及经 AstCodec 编码后解码到 ExprArena 的语法树
+ *
+ * 输入中有时夹杂语法错误，出错的表达式已经创建的节点留在数组中，检查它们不影响之后的表达式。
+ * 另外用几个嵌套极深的表达式检查遍历不会栈溢出（这些输入比较结构哈希，不拼接字符串）
+ *
+ * 用法：java -cp out com.cheng.lox.ArenaDiff [输入的个数]，有不一致时退出码为 1
+ */
+public final class ArenaDiff {
+    private int mismatches = 0;
+
+    private ArenaDiff() {
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        ArenaDiff diff = new ArenaDiff();
+
+        Random random = new Random(13);
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            int expressions = 1 + random.nextInt(4);
+            for (int e = 0; e < expressions; e++) {
+                if (e > 0) sb.append(";\n");
+                sb.append(random.nextInt(8) == 0 ? "1 + * 2" : Corpus.expression(random, 6));
+            }
+            String source = random.nextBoolean() ? sb.toString().replace(' ', '\n') : sb.toString();
+            diff.compare(source);
+        }
+
+        int depth = 100_000;
+        diff.deep("-".repeat(2 * depth) + "1");
+        diff.deep("(".repeat(depth) + "1" + " + 1)".repeat(depth));
+        diff.deep("true ? ".repeat(depth) + "1" + " : 2".repeat(depth));
+        diff.deep("1" + " + 1".repeat(depth));
+
+        System.out.println(count + " inputs and 4 deep expressions, " + diff.mismatches + " mismatches");
+        if (diff.mismatches > 0) System.exit(1);
+    }
+
+    private void compare(String source) {
+        List<Expr> plain = new ArrayList<>();
+        ExprArena arena = new ExprArena();
+        List<Expr> roots = new ArrayList<>();
+        String expected = Corpus.capture(() -> parse(source, ExprFactory.OBJECTS, plain));
+        String actual = Corpus.capture(() -> parse(source, arena, roots));
+        check("syntax errors", source, expected, actual);
+        if (plain.size() != roots.size()) return;
+
+        for (int i = 0; i < plain.size(); i++) {
+            String tree = new AstPrinter().print(plain.get(i));
+            check("accept", source, tree, new AstPrinter().print(roots.get(i)));
+            check("walk", source, tree, print(arena, roots.get(i)));
+            check("evaluate", source, run(plain.get(i)), run(roots.get(i)));
+        }
+        if (plain.isEmpty()) return;
+
+        List<Expr> decoded = AstCodec.decode(AstCodec.encode(plain), new ExprArena());
+        for (int i = 0; i < plain.size(); i++) {
+            check("codec", source, new AstPrinter().print(plain.get(i)), new AstPrinter().print(decoded.get(i)));
+        }
+    }
+
+    private void deep(String source) {
+        Expr plain = new Parser(new Scanner(source).scanBuffer()).parse();
+        ExprArena arena = new ExprArena();
+        Expr root = new Parser(new Scanner(source).scanBuffer(), arena).parse();
+        String described = Corpus.describe(source);
+        check("accept", described, new AstPrinter().print(plain), new AstPrinter().print(root));
+        check("walk", described, String.valueOf(ExprWalker.walk(plain, new Hash())), String.valueOf(hash(arena, root)));
+        check("evaluate", described, run(plain), run(root));
+    }
+
+    private void check(String name, String source, String expected, String actual) {
+        if (expected.equals(actual) || ++mismatches > 5) return;
+        System.out.println("MISMATCH " + name + " on: " + Corpus.describe(source)
+                + "\n expected: " + expected + "\n actual:   " + actual);
+    }
+
+    /**
+     * 错误恢复模式下解析所有表达式
+     *
+     * @return 解析出的表达式的个数
+     */
+    private static String parse(String source, ExprFactory factory, List<Expr> out) {
+        Scanner scanner = new Scanner(source);
+        scanner.deferErrors();
+        out.addAll(new Parser(scanner.scanBuffer(), factory).parseAll());
+        return out.size() + " expressions\n";
+    }
+
+    /**
+     * 通过 ExprArena.walk 打印语法树，格式与 AstPrinter 相同
+     */
+    private static String print(ExprArena arena, Expr root) {
+        String[] texts = new String[arena.size()];
+        arena.walk(root, new ExprArena.Walker() {
+            @Override
+            public void visitUnary(int node, TokenType operator, int right) {
+                texts[node] = "(" + TokenBuffer.fixedLexeme(operator) + " " + texts[right] + ")";
+            }
+
+            @Override
+            public void visitBinary(int node, int left, TokenType operator, int right) {
+                texts[node] = "(" + TokenBuffer.fixedLexeme(operator) + " " + texts[left] + " " + texts[right] + ")";
+            }
+
+            @Override
+            public void visitGrouping(int node, int expression) {
+                texts[node] = "(group " + texts[expression] + ")";
+            }
+
+            @Override
+            public void visitLiteral(int node, Object value) {
+                texts[node] = value == null ? "null" : value.toString();
+            }
+
+            @Override
+            public void visitTernary(int node, int condition, int exprIfTrue, int exprIfFalse) {
+                texts[node] = "(ternary " + texts[condition] + " " + texts[exprIfTrue] + " " + texts[exprIfFalse] + ")";
+            }
+        });
+        return texts[((ExprArena.Node) root).index];
+    }
+
+    /**
+     * 通过 ExprArena.walk 计算结构哈希，与 Hash 对普通节点的计算方式相同
+     */
+    private static long hash(ExprArena arena, Expr root) {
+        long[] hashes = new long[arena.size()];
+        arena.walk(root, new ExprArena.Walker() {
+            @Override
+            public void visitUnary(int node, TokenType operator, int right) {
+                hashes[node] = Hash.combine(1, operator.ordinal() * 31L + arena.line(node), hashes[right]);
+            }
+
+            @Override
+            public void visitBinary(int node, int left, TokenType operator, int right) {
+                hashes[node] = Hash.combine(2, operator.ordinal() * 31L + arena.line(node), hashes[left], hashes[right]);
+            }
+
+            @Override
+            public void visitGrouping(int node, int expression) {
+                hashes[node] = Hash.combine(3, hashes[expression]);
+            }
+
+            @Override
+            public void visitLiteral(int node, Object value) {
+                hashes[node] = Hash.combine(4, String.valueOf(value).hashCode());
+            }
+
+            @Override
+            public void visitTernary(int node, int condition, int exprIfTrue, int exprIfFalse) {
+                hashes[node] = Hash.combine(5, hashes[condition], hashes[exprIfTrue], hashes[exprIfFalse]);
+            }
+        });
+        return hashes[((ExprArena.Node) root).index];
+    }
+
+    /**
+     * 普通节点的结构哈希：节点类型、运算符类型和行号、字面量、子节点的哈希
+     */
+    private static final class Hash implements ExprWalker.Visitor<Long> {
+        static long combine(long... parts) {
+            long hash = 17;
+            for (long part : parts) hash = hash * 1_000_003 + part;
+            return hash;
+        }
+
+        @Override
+        public Long visitUnaryExpr(Expr.Unary expr, Long right) {
+            return combine(1, expr.operator.type.ordinal() * 31L + expr.operator.line, right);
+        }
+
+        @Override
+        public Long visitBinaryExpr(Expr.Binary expr, Long left, Long right) {
+            return combine(2, expr.operator.type.ordinal() * 31L + expr.operator.line, left, right);
+        }
+
+        @Override
+        public Long visitGroupingExpr(Expr.Grouping expr, Long expression) {
+            return combine(3, expression);
+        }
+
+        @Override
+        public Long visitLiteralExpr(Expr.Literal expr) {
+            return combine(4, String.valueOf(expr.value).hashCode());
+        }
+
+        @Override
+        public Long visitTernaryExpr(Expr.Ternary expr, Long condition, Long exprIfTrue, Long exprIfFalse) {
+            return combine(5, condition, exprIfTrue, exprIfFalse);
+        }
+    }
+
+    /**
+     * 求值并把结果转换为文本：值的打印形式和类型，或者错误信息和行号
+     */
+    private static String run(Expr expr) {
+        try {
+            Object value = new Interpreter().evaluate(expr);
+            return Interpreter.stringify(value) + "/" + (value == null ? "nil" : value.getClass().getSimpleName());
+        } catch (RuntimeError error) {
+            return "error " + error.getMessage() + " @" + error.token.line;
+        }
+    }
+}
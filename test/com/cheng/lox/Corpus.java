@@ -0,0 +1,231 @@
+package com.cheng.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 差分测试和基准使用的语料
+ * 所有语料都由固定的随机种子生成，同一个种子在任何机器上得到相同的输入；
+ * 另外提供把 Token 序列转换为文本、以及采集 Lox 报告的诊断信息的方法，方便逐字比较两种实现的结果
+ */
+final class Corpus {
+    /**
+     * capture 的结果中表示任务抛出了异常的前缀
+     */
+    static final String THREW = "threw ";
+
+    /**
+     * 词法“杂烩”的组成部分：各种 Token、跨行的字符串和注释、不完整的运算符、非 ASCII 字符
+     */
+    private static final String[] PARTS = {
+            "(", ")", "+", "-", "*", "/", "foo", "bar_1", "while", "null", "12", "3.25", "1.", ".5",
+            " ", " ", "\t", "\n", "\n", "\"ab\ncd\"", "`x\n\ny`", "\"e\\\"s\"", "\"héllo, 世界\"",
+            "/* c\n\n */", "/* 注释 */", "// line\n", "// ünïcode\n", "==", "!=", "<=", ">", "!",
+            "&", "|", "&&", "||", "#", "?", ":", ";", "é", "中"
+    };
+    /**
+     * 短小的随机输入的字母表，专门覆盖各种边界：未闭合的字符串和注释、转义、小数点、文件末尾
+     */
+    private static final String FUZZ_ALPHABET = "ab1.2\"`\\/*\n =!<>&|#()+-;:?eé中";
+    /**
+     * 增量扫描的编辑片段
+     */
+    private static final String[] FRAGMENTS = {
+            "foo", "while", "12.5", "\"s\n\"", "/*", "*/", "//", "\n", " ", "1.", "(", ")", "=", "==", "`", "\\", "x"
+    };
+    /**
+     * 表达式的原子：各种类型的字面量
+     */
+    private static final String[] ATOMS = {
+            "1", "2.5", "0", "-0", "3", "10", "0.1", "123456789012345678",
+            "\"s\"", "\"\"", "\"é中\"", "true", "false", "null"
+    };
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "==", "!=", "<", "<=", ">", ">="};
+
+    private Corpus() {
+    }
+
+    /**
+     * 生成词法杂烩
+     *
+     * @param random 随机数
+     * @param length 最小长度
+     * @param huge   是否在随机位置插入很长的块注释和字符串（用于检查跨越并行扫描分段的 Token）
+     * @return 源代码，可能包含各种词法错误
+     */
+    static String soup(Random random, int length, boolean huge) {
+        StringBuilder sb = new StringBuilder(length + 16);
+        while (sb.length() < length) {
+            sb.append(PARTS[random.nextInt(PARTS.length)]).append(random.nextInt(4) == 0 ? '\n' : ' ');
+        }
+        if (huge && random.nextBoolean()) {
+            sb.insert(random.nextInt(sb.length()), "/* big\n" + "x\n".repeat(random.nextInt(600_000)) + "*/");
+        }
+        if (huge && random.nextBoolean()) {
+            sb.insert(random.nextInt(sb.length()), "\"long\n" + "y\n".repeat(random.nextInt(600_000)) + "\"");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 生成短小的随机输入
+     *
+     * @param random    随机数
+     * @param maxLength 最大长度（不含）
+     * @return 源代码
+     */
+    static String fuzz(Random random, int maxLength) {
+        int length = random.nextInt(maxLength);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(FUZZ_ALPHABET.charAt(random.nextInt(FUZZ_ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 生成增量扫描的编辑内容：随机字符和片段的组合
+     *
+     * @param random 随机数
+     * @param count  字符或片段的个数
+     * @return 文本
+     */
+    static String edit(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (random.nextBoolean()) {
+                sb.append(FUZZ_ALPHABET.charAt(random.nextInt(FUZZ_ALPHABET.length())));
+            } else {
+                sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 生成随机表达式
+     * 类型是混合的，求值时会出现各种运行时错误；运算符前面有时换行，运行时错误的行号也会不同
+     *
+     * @param random 随机数
+     * @param depth  最大嵌套深度
+     * @return 表达式的源代码
+     */
+    static String expression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) return ATOMS[random.nextInt(ATOMS.length)];
+        switch (random.nextInt(4)) {
+            case 0:
+                return "(" + expression(random, depth - 1) + ")";
+            case 1:
+                return (random.nextBoolean() ? "-" : "!") + expression(random, depth - 1);
+            case 2:
+                return expression(random, depth - 1)
+                        + (random.nextInt(3) == 0 ? "\n" : " ")
+                        + OPERATORS[random.nextInt(OPERATORS.length)] + " "
+                        + expression(random, depth - 1);
+            default:
+                return expression(random, depth - 1) + " ? " + expression(random, depth - 1)
+                        + "\n : " + expression(random, depth - 1);
+        }
+    }
+
+    /**
+     * 生成只含数字运算的长表达式，用于解析和求值的基准
+     *
+     * @param random 随机数
+     * @param terms  操作数的个数
+     * @return 源代码
+     */
+    static String arithmetic(Random random, int terms) {
+        String[] operators = {" + ", " - ", " * ", " / ", " == ", " < ", " >= "};
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 0; i < terms; i++) {
+            sb.append(operators[random.nextInt(operators.length)]);
+            if (random.nextInt(4) == 0) sb.append('-');
+            if (random.nextInt(5) == 0) {
+                sb.append('(').append(random.nextInt(100)).append(" * 2)");
+            } else {
+                sb.append(random.nextInt(1000));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 读取 examples/jlox 下的示例脚本（在项目根目录运行）
+     *
+     * @return 各个脚本的内容，目录不存在时为空
+     * @throws IOException 读取失败时
+     */
+    static List<String> examples() throws IOException {
+        List<String> sources = new ArrayList<>();
+        Path directory = Paths.get("examples", "jlox");
+        if (!Files.isDirectory(directory)) return sources;
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(f -> f.toString().endsWith(".lox")).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            sources.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+        return sources;
+    }
+
+    /**
+     * 把 Token 序列转换为文本，每行一个 Token：类型、原始文本、字面量、行号
+     *
+     * @param tokens Token序列（以EOF结尾）
+     * @return 文本
+     */
+    static String dump(TokenSource tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; ; i++) {
+            Token token = tokens.token(i);
+            sb.append(token.type).append(' ').append(token.lexeme).append(' ')
+                    .append(token.literal).append(' ').append(token.line).append('\n');
+            if (token.type == TokenType.EOF) return sb.toString();
+        }
+    }
+
+    /**
+     * 执行任务并采集结果
+     * 任务期间 System.out 被重定向，Lox 报告的诊断信息附在结果后面；抛出的异常也作为结果的一部分
+     * 执行后清除 Lox.hadError，不影响下一次执行
+     *
+     * @param task 任务
+     * @return 结果和诊断信息
+     */
+    static String capture(Supplier<String> task) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        String result;
+        System.setOut(new PrintStream(diagnostics, true, StandardCharsets.UTF_8));
+        try {
+            result = task.get();
+        } catch (RuntimeException | StackOverflowError e) {
+            result = THREW + e;
+        } finally {
+            System.setOut(out);
+            Lox.hadError = false;
+        }
+        return result + "--- diagnostics\n" + diagnostics.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 在一行内显示输入，长输入只显示长度
+     */
+    static String describe(String source) {
+        if (source.length() > 200) return source.length() + " chars";
+        return source.replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,63 @@
+package com.cheng.lox;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 树遍历求值的基准：装箱的 ReferenceEvaluator 与 Interpreter
+ * 对 2000 个随机的纯数字表达式（深度 8）反复求值，输出每秒的求值次数和每次求值分配的字节数
+ *
+ * 用法：java -cp out com.cheng.lox.EvalBench
+ */
+public final class EvalBench {
+    private static final String[] OPERATORS = {"+", "-", "*", "/"};
+
+    private EvalBench() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(3);
+        List<Expr> exprs = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            exprs.add(new Parser(new Scanner(arithmetic(random, 8)).scanBuffer()).parse());
+        }
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        ReferenceEvaluator reference = new ReferenceEvaluator();
+        Interpreter interpreter = new Interpreter();
+        double sink = 0;
+        for (int round = 0; round < 8; round++) {
+            for (int which = 0; which < 2; which++) {
+                long allocated = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                int evals = 0;
+                for (int k = 0; k < 200; k++) {
+                    for (Expr expr : exprs) {
+                        Object value = which == 0 ? expr.accept(reference) : interpreter.evaluate(expr);
+                        sink += (Double) value;
+                        evals++;
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                long bytes = threads.getThreadAllocatedBytes(thread) - allocated;
+                // 前几轮是预热
+                if (round < 5) continue;
+                System.out.printf("%-12s %9.0f evals/s %8.1f B/eval%n",
+                        which == 0 ? "boxed" : "interpreter", evals / (nanos / 1e9), bytes / (double) evals);
+            }
+        }
+        System.out.println("checksum " + sink);
+    }
+
+    private static String arithmetic(Random random, int depth) {
+        if (depth <= 0 || random.nextInt(5) == 0) return String.valueOf(1 + random.nextInt(9));
+        String expr = arithmetic(random, depth - 1) + " " + OPERATORS[random.nextInt(OPERATORS.length)] + " "
+                + arithmetic(random, depth - 1);
+        return random.nextInt(3) == 0 ? "(" + expr + ")" : expr;
+    }
+}
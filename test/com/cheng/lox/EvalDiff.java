@@ -0,0 +1,112 @@
+package com.cheng.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * 求值的差分测试
+ * 以 ReferenceEvaluator 的结果为准，比较所有求值引擎得到的值（打印形式和类型）或运行时错误（信息和行号）：
+ * 默认的 Interpreter、常量折叠后再求值（--fold）、字节码虚拟机（--vm）、闭包（--closures）和 JVM 字节码（--jit）
+ *
+ * 随机表达式的类型是混合的，一半的输入把空格换成换行，错误的行号也参与比较。
+ * 另外用几个嵌套极深的表达式检查各个引擎都不会栈溢出（参照求值器本身会栈溢出，这些输入与已知结果比较）
+ *
+ * 用法：java -cp out com.cheng.lox.EvalDiff [表达式的个数]，有不一致时退出码为 1
+ */
+public final class EvalDiff {
+    private final List<String> names = new ArrayList<>();
+    private final List<Function<Expr, Object>> engines = new ArrayList<>();
+    private int mismatches = 0;
+
+    private EvalDiff() {
+        engine("interpreter", expr -> new Interpreter().evaluate(expr));
+        engine("fold", expr -> new Interpreter().evaluate(new ConstantFolder().optimize(expr)));
+        engine("vm", expr -> new VM().interpret(expr));
+        engine("closures", expr -> ClosureCompiler.compile(expr).get());
+        engine("jit", expr -> JvmCompiler.compile(expr).get());
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        EvalDiff diff = new EvalDiff();
+
+        Random random = new Random(11);
+        int compared = 0;
+        for (int i = 0; i < count; i++) {
+            String source = Corpus.expression(random, 6);
+            if (random.nextBoolean()) source = source.replace(' ', '\n');
+            Expr expr = parse(source);
+            if (expr == null) continue;
+            compared++;
+            diff.compare(source, expr, run(expr, e -> e.accept(new ReferenceEvaluator())));
+        }
+
+        int depth = 100_000;
+        diff.deep("-".repeat(2 * depth) + "1", "1/Double");
+        diff.deep("-".repeat(depth) + "\"s\"", "error Operand must be a number. @1");
+        diff.deep("(".repeat(depth) + "1" + " + 1)".repeat(depth), (depth + 1) + "/Double");
+        diff.deep("true ? ".repeat(depth) + "1" + " : 2".repeat(depth), "1/Double");
+        diff.deep("false ? 1 : ".repeat(depth) + "\"end\"", "end/String");
+        diff.deep("1" + " + 1".repeat(depth), (depth + 1) + "/Double");
+
+        System.out.println(compared + " expressions and 6 deep expressions on " + diff.names + ", "
+                + diff.mismatches + " mismatches");
+        if (diff.mismatches > 0) System.exit(1);
+    }
+
+    private void engine(String name, Function<Expr, Object> engine) {
+        names.add(name);
+        engines.add(engine);
+    }
+
+    private void compare(String source, Expr expr, String expected) {
+        for (int i = 0; i < engines.size(); i++) {
+            String actual = run(expr, engines.get(i));
+            if (!expected.equals(actual) && ++mismatches <= 5) {
+                System.out.println("MISMATCH " + names.get(i) + " on: " + Corpus.describe(source)
+                        + "\n expected: " + expected + "\n actual:   " + actual);
+            }
+        }
+    }
+
+    private void deep(String source, String expected) {
+        Expr expr = parse(source);
+        if (expr == null) throw new AssertionError("parse failed: " + Corpus.describe(source));
+        compare(source, expr, expected);
+    }
+
+    /**
+     * 求值并把结果转换为文本：值的打印形式和类型，或者错误信息和行号
+     */
+    private static String run(Expr expr, Function<Expr, Object> engine) {
+        try {
+            Object value = engine.apply(expr);
+            return Interpreter.stringify(value) + "/" + (value == null ? "nil" : value.getClass().getSimpleName());
+        } catch (RuntimeError error) {
+            return "error " + error.getMessage() + " @" + error.token.line;
+        } catch (RuntimeException | StackOverflowError e) {
+            return Corpus.THREW + e;
+        }
+    }
+
+    /**
+     * 解析一个表达式，不输出语法错误
+     *
+     * @return 表达式，有语法错误或不止一个表达式时为 null
+     */
+    private static Expr parse(String source) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            List<Expr> exprs = new Parser(new Scanner(source).scanBuffer()).parseAll();
+            return Lox.hadError || exprs.size() != 1 ? null : exprs.get(0);
+        } finally {
+            System.setOut(out);
+            Lox.hadError = false;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.cheng.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 哈希共享的差分测试
+ * 同一个输入分别用 ExprFactory.OBJECTS 和 InterningExprFactory（--intern）解析，
+ * 比较 AstPrinter 的输出，以及 Interpreter 求得的值或运行时错误（信息和行号）
+ *
+ * 另外检查共享本身：所有输入共用一个工厂，结构相同（包括运算符的行号）的子树必须是同一个对象，
+ * 结构不同的子树不能是同一个对象；根节点的结构哈希必须与另一个新建的工厂算出的相同。
+ * 最后在由 50 种规则重复组成的长表达式上输出节点的请求数和实际创建的节点数
+ *
+ * 用法：java -cp out com.cheng.lox.InternDiff [表达式的个数]，有不一致时退出码为 1
+ */
+public final class InternDiff {
+    private final InterningExprFactory shared = new InterningExprFactory();
+    /**
+     * 子树的结构 → 共享的节点
+     */
+    private final Map<String, Expr> canonical = new HashMap<>();
+    /**
+     * 共享的节点 → 子树的结构
+     */
+    private final Map<Expr, String> structures = new IdentityHashMap<>();
+    private int mismatches = 0;
+
+    private InternDiff() {
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        InternDiff diff = new InternDiff();
+
+        Random random = new Random(5);
+        int compared = 0;
+        for (int i = 0; i < count; i++) {
+            String source = Corpus.expression(random, 6);
+            if (random.nextBoolean()) source = source.replace(' ', '\n');
+            if (diff.compare(source)) compared++;
+        }
+        System.out.println(compared + " expressions, " + diff.shared.requests() + " node requests, "
+                + diff.shared.size() + " distinct nodes");
+
+        diff.rules(new Random(9), 20_000, 50);
+
+        System.out.println(diff.mismatches + " mismatches");
+        if (diff.mismatches > 0) System.exit(1);
+    }
+
+    /**
+     * 比较一个输入在共享和不共享时的打印结果和求值结果，并检查共享
+     *
+     * @return 输入是否是一个没有语法错误的表达式
+     */
+    private boolean compare(String source) {
+        Expr plain = parse(source, ExprFactory.OBJECTS);
+        if (plain == null) return false;
+        Expr interned = parse(source, shared);
+        InterningExprFactory fresh = new InterningExprFactory();
+        Expr alone = parse(source, fresh);
+
+        check("print", source, new AstPrinter().print(plain), new AstPrinter().print(interned));
+        check("evaluate", source, run(plain), run(interned));
+        check("hash", source, String.valueOf(fresh.hash(alone)), String.valueOf(shared.hash(interned)));
+        share(source, interned);
+        return true;
+    }
+
+    /**
+     * 机器生成的规则：少数几种规则重复很多次，全部写在一行上
+     *
+     * @param random   随机数
+     * @param rules    规则的个数
+     * @param distinct 不同规则的种数
+     */
+    private void rules(Random random, int rules, int distinct) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rules; i++) {
+            int k = random.nextInt(distinct);
+            if (i > 0) sb.append(" + ");
+            sb.append("(((").append(k).append(" + 1) * (").append(k).append(" + 1)) > -").append(k)
+                    .append(" ? 1 : 2)");
+        }
+        String source = sb.toString();
+        InterningExprFactory factory = new InterningExprFactory();
+        Expr plain = parse(source, ExprFactory.OBJECTS);
+        Expr interned = parse(source, factory);
+        check("rules print", source, new AstPrinter().print(plain), new AstPrinter().print(interned));
+        check("rules evaluate", source, run(plain), run(interned));
+        System.out.println(rules + " rules of " + distinct + " kinds: " + factory.requests() + " node requests, "
+                + factory.size() + " distinct nodes");
+    }
+
+    /**
+     * 检查子树的共享：结构相同的子树是同一个对象，同一个对象只有一种结构
+     *
+     * @return 子树的结构
+     */
+    private String share(String source, Expr expr) {
+        String structure;
+        if (expr instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) expr).value;
+            structure = value == null ? "null" : value.getClass().getSimpleName() + ":" + value;
+        } else if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            structure = "(" + operator(unary.operator) + " " + share(source, unary.right) + ")";
+        } else if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            structure = "(" + operator(binary.operator) + " " + share(source, binary.left)
+                    + " " + share(source, binary.right) + ")";
+        } else if (expr instanceof Expr.Grouping) {
+            structure = "(group " + share(source, ((Expr.Grouping) expr).expression) + ")";
+        } else {
+            Expr.Ternary ternary = (Expr.Ternary) expr;
+            structure = "(?: " + share(source, ternary.condition) + " " + share(source, ternary.exprIfTrue)
+                    + " " + share(source, ternary.exprIfFalse) + ")";
+        }
+
+        Expr node = canonical.putIfAbsent(structure, expr);
+        if (node != null && node != expr) {
+            check("not shared", source, structure, "another node");
+        }
+        String known = structures.putIfAbsent(expr, structure);
+        if (known != null && !known.equals(structure)) {
+            check("shared by different subtrees", source, known, structure);
+        }
+        return structure;
+    }
+
+    private static String operator(Token operator) {
+        return operator.type + "@" + operator.line;
+    }
+
+    private void check(String name, String source, String expected, String actual) {
+        if (expected.equals(actual) || ++mismatches > 5) return;
+        System.out.println("MISMATCH " + name + " on: " + Corpus.describe(source)
+                + "\n expected: " + expected + "\n actual:   " + actual);
+    }
+
+    /**
+     * 求值并把结果转换为文本：值的打印形式和类型，或者错误信息和行号
+     */
+    private static String run(Expr expr) {
+        try {
+            Object value = new Interpreter().evaluate(expr);
+            return Interpreter.stringify(value) + "/" + (value == null ? "nil" : value.getClass().getSimpleName());
+        } catch (RuntimeError error) {
+            return "error " + error.getMessage() + " @" + error.token.line;
+        }
+    }
+
+    /**
+     * 解析一个表达式，不输出语法错误
+     *
+     * @return 表达式，有语法错误或不止一个表达式时为 null
+     */
+    private static Expr parse(String source, ExprFactory factory) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            List<Expr> exprs = new Parser(new Scanner(source).scanBuffer(), factory).parseAll();
+            return Lox.hadError || exprs.size() != 1 ? null : exprs.get(0);
+        } finally {
+            System.setOut(out);
+            Lox.hadError = false;
+        }
+    }
+}
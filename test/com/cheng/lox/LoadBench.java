@@ -0,0 +1,121 @@
+package com.cheng.lox;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * 脚本加载的基准：Lox.runFile 原来的读取方式与内存映射
+ * 生成一个纯 ASCII 的临时脚本，比较三种加载方式从打开文件到扫描出第一个 Token 的耗时，
+ * 以及期间的堆峰值（各个堆内存池峰值之和）和扫描器仍在使用源代码时保留的堆：
+ * 读入全部字节再按默认字符集解码为 String（原来的方式）、内存映射后逐字节扫描（--utf8），
+ * 内存映射后延迟解码（默认字符集不是 UTF-8 时的默认方式，这里用 US-ASCII）
+ *
+ * 用法：java -Xmx2g -cp out com.cheng.lox.LoadBench [脚本大小（MB），默认 200]
+ */
+public final class LoadBench {
+    private LoadBench() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Path file = Files.createTempFile("lox-load", ".lox");
+        try {
+            write(file, megabytes * 1_000_000L);
+            System.out.printf("%d MB script%n", Files.size(file) / 1_000_000);
+            for (int round = 0; round < 3; round++) {
+                measure("readAllBytes + String", () -> new Scanner(readString(file, Charset.defaultCharset())));
+                measure("mapped ByteSource", () -> new Scanner(map(file)));
+                measure("mapped, lazy decode", () -> new Scanner(map(file).decodeLazily(StandardCharsets.US_ASCII)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * 加载并扫描出第一个 Token，输出耗时、堆峰值和保留的堆
+     *
+     * @param name 加载方式
+     * @param load 打开文件并创建扫描器
+     */
+    private static void measure(String name, Supplier<Scanner> load) {
+        long baseline = usedHeap();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+
+        long start = System.nanoTime();
+        Scanner scanner = load.get();
+        Token first = scanner.nextToken();
+        long nanos = System.nanoTime() - start;
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        long live = usedHeap() - baseline;
+        System.out.printf("%-22s first token %s after %8.3f ms, peak heap %6.1f MB, live %6.1f MB%n",
+                name, first.type, nanos / 1e6, (peak - baseline) / 1e6, live / 1e6);
+        // 保留扫描器直到测量完，源代码在此之前不会被回收
+        if (scanner.position() < 0) throw new AssertionError();
+    }
+
+    /**
+     * 生成纯 ASCII 的脚本：带括号的数字运算，夹杂行注释和字符串，每行以分号结束
+     */
+    private static void write(Path file, long length) throws IOException {
+        Random random = new Random(1);
+        long written = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            StringBuilder line = new StringBuilder();
+            while (written < length) {
+                line.setLength(0);
+                line.append('(').append(random.nextInt(1000)).append(" + ").append(random.nextInt(100))
+                        .append(".25) * ").append(random.nextInt(50));
+                if (random.nextInt(6) == 0) {
+                    line.append(" // note");
+                } else if (random.nextInt(9) == 0) {
+                    line.append(" + \"str\"");
+                }
+                line.append(";\n");
+                out.append(line);
+                written += line.length();
+            }
+        }
+    }
+
+    private static String readString(Path file, Charset charset) {
+        try {
+            return new String(Files.readAllBytes(file), charset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ByteSource map(Path file) {
+        try {
+            return ByteSource.map(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+}
@@ -0,0 +1,95 @@
+package com.cheng.lox;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * VM 值表示的基准：装箱的 ReferenceEvaluator、Interpreter 和 VM
+ * 随机生成数字运算和三元表达式，加上 strings 参数时三元表达式的条件改为字符串与数字混合的相等比较，
+ * 输出每秒的求值次数和每次求值分配的字节数
+ *
+ * 只使用 VM.run 和 BytecodeCompiler.compile，值栈改为 NaN-boxing 之前的版本也能编译，用来对比两种值表示
+ *
+ * 用法：java -cp out com.cheng.lox.NanBench [深度 个数 重复次数 [strings]]，默认为 8 2000 100
+ */
+public final class NanBench {
+    private static final String[] OPERATORS = {"+", "-", "*", "/"};
+    private static final String[] NAMES = {"object visitor", "interpreter", "vm"};
+
+    private NanBench() {
+    }
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int reps = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        boolean strings = args.length > 3 && args[3].equals("strings");
+
+        Random random = new Random(5);
+        List<Expr> exprs = new ArrayList<>();
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Expr expr = new Parser(new Scanner(generate(random, depth, strings)).scanBuffer()).parse();
+            exprs.add(expr);
+            chunks.add(BytecodeCompiler.compile(expr));
+        }
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        ReferenceEvaluator reference = new ReferenceEvaluator();
+        Interpreter interpreter = new Interpreter();
+        VM vm = new VM();
+        double sink = 0;
+        for (int round = 0; round < 8; round++) {
+            for (int which = 0; which < NAMES.length; which++) {
+                long allocated = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                int evals = 0;
+                for (int k = 0; k < reps; k++) {
+                    for (int i = 0; i < count; i++) {
+                        Object value;
+                        if (which == 0) {
+                            value = exprs.get(i).accept(reference);
+                        } else if (which == 1) {
+                            value = interpreter.evaluate(exprs.get(i));
+                        } else {
+                            value = vm.run(chunks.get(i));
+                        }
+                        sink += value instanceof Double ? (Double) value : 1;
+                        evals++;
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                long bytes = threads.getThreadAllocatedBytes(thread) - allocated;
+                // 前几轮是预热
+                if (round < 5) continue;
+                System.out.printf("%-14s %9.0f evals/s %8.1f B/eval%n",
+                        NAMES[which], evals / (nanos / 1e9), bytes / (double) evals);
+            }
+        }
+        System.out.println("checksum " + sink);
+    }
+
+    /**
+     * 随机表达式：四则运算，约十分之一的节点是三元表达式
+     *
+     * @param strings 三元表达式的条件是否为可能含字符串的相等比较（否则为数字的小于比较）
+     */
+    private static String generate(Random random, int depth, boolean strings) {
+        if (depth <= 0 || random.nextInt(6) == 0) {
+            return strings && random.nextInt(4) == 0 ? "\"s" + random.nextInt(3) + "\"" : String.valueOf(1 + random.nextInt(9));
+        }
+        if (random.nextInt(10) == 0) {
+            return "(" + generate(random, depth - 1, strings) + (strings ? " == " : " < ")
+                    + generate(random, depth - 1, strings) + " ? "
+                    + generate(random, depth - 1, false) + " : " + generate(random, depth - 1, false) + ")";
+        }
+        String expr = generate(random, depth - 1, false) + " " + OPERATORS[random.nextInt(OPERATORS.length)] + " "
+                + generate(random, depth - 1, false);
+        return random.nextInt(3) == 0 ? "(" + expr + ")" : expr;
+    }
+}
@@ -0,0 +1,42 @@
+package com.cheng.lox;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 语法分析的内存分配基准
+ * 用 ThreadMXBean.getThreadAllocatedBytes 统计 Parser.parse 在当前线程上分配的字节数，折算为每个 Token 的分配量。
+ * 源代码分别是 String 和内存映射文件使用的 ByteSource，两者的 Token 原始文本由不同的 CharSequence 切出
+ *
+ * 用法：java -cp out com.cheng.lox.ParseAllocBench [操作数的个数]
+ */
+public final class ParseAllocBench {
+    private ParseAllocBench() {
+    }
+
+    public static void main(String[] args) {
+        int terms = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        String source = Corpus.arithmetic(new Random(1), terms);
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        CharSequence[] sources = {source, new ByteSource(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)))};
+        for (CharSequence chars : sources) {
+            TokenBuffer tokens = new Scanner(chars).scanBuffer();
+            long bytes = 0;
+            // 多解析几次，取 JIT 编译稳定后的最后一次
+            for (int i = 0; i < 30; i++) {
+                long before = threads.getThreadAllocatedBytes(thread);
+                Expr expr = new Parser(tokens).parse();
+                bytes = threads.getThreadAllocatedBytes(thread) - before;
+                if (expr == null) throw new AssertionError("parse failed");
+            }
+            System.out.printf("%s: %d tokens, %.1f bytes allocated per token%n",
+                    chars.getClass().getSimpleName(), tokens.size(), bytes / (double) tokens.size());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.cheng.lox;
+
+import java.util.Random;
+
+/**
+ * 语法分析的基准：逐级递归的 ReferenceParser 与优先级爬升的 Parser
+ * 解析同一个预先扫描好的长表达式（默认 40 万个操作数，约 120 万个 Token），各重复多次取最快的一次（没有 JMH）
+ *
+ * 用法：java -cp out com.cheng.lox.ParseBench [操作数的个数]
+ */
+public final class ParseBench {
+    private ParseBench() {
+    }
+
+    public static void main(String[] args) {
+        int terms = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+        TokenBuffer tokens = new Scanner(Corpus.arithmetic(new Random(1), terms)).scanBuffer();
+        for (int round = 0; round < 3; round++) {
+            report("cascade", tokens, time(tokens, true));
+            report("precedence climbing", tokens, time(tokens, false));
+        }
+    }
+
+    /**
+     * 解析 40 次，返回最快一次的耗时（纳秒）
+     */
+    private static long time(TokenBuffer tokens, boolean reference) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 40; i++) {
+            long start = System.nanoTime();
+            Expr expr = reference ? new ReferenceParser(tokens).parse() : new Parser(tokens).parse();
+            best = Math.min(best, System.nanoTime() - start);
+            if (expr == null) throw new AssertionError("parse failed");
+        }
+        return best;
+    }
+
+    private static void report(String name, TokenBuffer tokens, long nanos) {
+        System.out.printf("%s: %d tokens, best %.1f ms, %.1f Mtokens/s%n",
+                name, tokens.size(), nanos / 1e6, tokens.size() / (nanos / 1e3));
+    }
+}
@@ -0,0 +1,61 @@
+package com.cheng.lox;
+
+import java.util.Random;
+
+/**
+ * 语法分析的差分测试
+ * 以 ReferenceParser（逐级递归的写法）为准，比较 Parser.parse 打印出的语法树（AstPrinter）和语法错误
+ *
+ * 语料包括随机的 Token 序列（大多数有语法错误）和随机的合法表达式（混合类型、跨行）。
+ * 每个输入只扫描一次，两个解析器读取同一个 TokenBuffer
+ *
+ * 用法：java -cp out com.cheng.lox.ParserDiff [输入的个数]，有不一致时退出码为 1
+ */
+public final class ParserDiff {
+    /**
+     * 随机 Token 序列的组成部分
+     */
+    private static final String[] PIECES = {
+            "1", "2.5", "\"s\"", "true", "false", "null", "(", "(", ")", "-", "!",
+            "+", "-", "*", "/", "==", "!=", "<", "<=", ">", ">=", "?", ":", "?", ":", ";", "\n"
+    };
+
+    private ParserDiff() {
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Random random = new Random(42);
+        int valid = 0;
+        int mismatches = 0;
+        for (int i = 0; i < count; i++) {
+            String source = random.nextBoolean() ? pieces(random) : Corpus.expression(random, 6);
+            Scanner scanner = new Scanner(source);
+            scanner.deferErrors();
+            TokenBuffer tokens = scanner.scanBuffer();
+
+            String expected = Corpus.capture(() -> print(new ReferenceParser(tokens).parse()));
+            String actual = Corpus.capture(() -> print(new Parser(tokens).parse()));
+            if (!expected.contains("Error")) valid++;
+            if (!expected.equals(actual) && ++mismatches <= 5) {
+                System.out.println("MISMATCH on: " + Corpus.describe(source)
+                        + "\nexpected:\n" + expected + "actual:\n" + actual);
+            }
+        }
+        System.out.println(count + " inputs, " + valid + " without syntax errors, " + mismatches + " mismatches");
+        if (mismatches > 0) System.exit(1);
+    }
+
+    private static String pieces(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = 1 + random.nextInt(25);
+        for (int i = 0; i < length; i++) {
+            sb.append(PIECES[random.nextInt(PIECES.length)]).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static String print(Expr expr) {
+        return (expr == null ? "null" : new AstPrinter().print(expr)) + "\n";
+    }
+}
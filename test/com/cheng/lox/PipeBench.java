@@ -0,0 +1,62 @@
+package com.cheng.lox;
+
+import java.util.Random;
+
+/**
+ * 扫描/解析流水线的基准：先扫描完再解析、--pipeline（扫描线程与解析并行）、--stream（按需拉取）
+ * 解析同一个长表达式，每种方式取多轮中最快的一次（没有 JMH）
+ *
+ * 流水线只有在至少两个处理器核心上才可能更快，单核时两个线程不能重叠，只剩交接的开销
+ *
+ * 用法：java -cp out com.cheng.lox.PipeBench [操作数的个数，默认 300000]
+ */
+public final class PipeBench {
+    private PipeBench() {
+    }
+
+    public static void main(String[] args) {
+        int terms = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        String source = generate(new Random(1), terms);
+        System.out.printf("%d chars, %d processors%n", source.length(), Runtime.getRuntime().availableProcessors());
+
+        long sequential = Long.MAX_VALUE;
+        long pipeline = Long.MAX_VALUE;
+        long stream = Long.MAX_VALUE;
+        for (int round = 0; round < 8; round++) {
+            long t0 = System.nanoTime();
+            check(new Parser(new Scanner(source).scanBuffer()).parse());
+            long t1 = System.nanoTime();
+            TokenPipeline tokens = new TokenPipeline(new Scanner(source));
+            try {
+                check(new Parser(tokens).parse());
+            } finally {
+                tokens.close();
+            }
+            long t2 = System.nanoTime();
+            check(new Parser(new TokenStream(new Scanner(source))).parse());
+            long t3 = System.nanoTime();
+            sequential = Math.min(sequential, t1 - t0);
+            pipeline = Math.min(pipeline, t2 - t1);
+            stream = Math.min(stream, t3 - t2);
+        }
+        System.out.printf("sequential %d ms  pipeline %d ms  stream %d ms%n",
+                sequential / 1_000_000, pipeline / 1_000_000, stream / 1_000_000);
+    }
+
+    /**
+     * 带括号的四则运算，每 8 项一个行注释
+     */
+    private static String generate(Random random, int terms) {
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 0; i < terms; i++) {
+            sb.append(i % 3 == 0 ? " + " : " * ").append('(').append(random.nextInt(1000))
+                    .append(" - ").append(random.nextInt(100)).append(".5)");
+            if (i % 8 == 0) sb.append(" // c\n");
+        }
+        return sb.toString();
+    }
+
+    private static void check(Expr expr) {
+        if (expr == null) throw new AssertionError("parse failed");
+    }
+}
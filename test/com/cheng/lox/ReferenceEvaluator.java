@@ -0,0 +1,85 @@
+package com.cheng.lox;
+
+/**
+ * 参照求值器：最直接的递归访问者，所有值都装箱为 Object
+ * 类型检查、错误信息和行号按 Lox 的语义逐条写出，是 EvalDiff 比较各个求值引擎的基准，也是基准程序中的对照组
+ *
+ * 嵌套很深的表达式会栈溢出
+ */
+final class ReferenceEvaluator implements Expr.Visitor<Object> {
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr) {
+        Object right = expr.right.accept(this);
+        if (expr.operator.type == TokenType.BANG) return !isTruthy(right);
+        if (!(right instanceof Double)) throw new RuntimeError(expr.operator, "Operand must be a number.");
+        return -(double) right;
+    }
+
+    @Override
+    public Object visitBinaryExpr(Expr.Binary expr) {
+        Object left = expr.left.accept(this);
+        Object right = expr.right.accept(this);
+        switch (expr.operator.type) {
+            case EQUAL_EQUAL:
+                return isEqual(left, right);
+            case BANG_EQUAL:
+                return !isEqual(left, right);
+            case PLUS:
+                if (left instanceof Double && right instanceof Double) return (double) left + (double) right;
+                if (left instanceof String && right instanceof String) return (String) left + right;
+                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+            default:
+                break;
+        }
+
+        if (!(left instanceof Double && right instanceof Double)) {
+            throw new RuntimeError(expr.operator, "Operands must be numbers.");
+        }
+        double a = (double) left;
+        double b = (double) right;
+        switch (expr.operator.type) {
+            case MINUS:
+                return a - b;
+            case STAR:
+                return a * b;
+            case SLASH:
+                return a / b;
+            case GREATER:
+                return a > b;
+            case GREATER_EQUAL:
+                return a >= b;
+            case LESS:
+                return a < b;
+            case LESS_EQUAL:
+                return a <= b;
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + expr.operator.type);
+        }
+    }
+
+    @Override
+    public Object visitGroupingExpr(Expr.Grouping expr) {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public Object visitLiteralExpr(Expr.Literal expr) {
+        return expr.value;
+    }
+
+    @Override
+    public Object visitTernaryExpr(Expr.Ternary expr) {
+        return isTruthy(expr.condition.accept(this)) ? expr.exprIfTrue.accept(this) : expr.exprIfFalse.accept(this);
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        return true;
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null) return b == null;
+        return a.equals(b);
+    }
+}
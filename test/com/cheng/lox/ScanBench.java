@@ -0,0 +1,68 @@
+package com.cheng.lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * 词法分析的吞吐量基准：手写的 Scanner 与表驱动的 DfaScanner
+ * 每种输入重复扫描多次取最快的一次（没有 JMH），输出每秒扫描的字符数（百万）
+ *
+ * 用法：java -cp out com.cheng.lox.ScanBench [合成输入的长度（MB），默认 30]
+ */
+public final class ScanBench {
+    private ScanBench() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        PrintStream out = System.out;
+        // 示例中的词法错误不影响测量，不输出
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        String examples = String.join("\n", Corpus.examples());
+        String synthetic = synthetic(new Random(1), megabytes * 1_000_000);
+        for (int round = 0; round < 3; round++) {
+            out.printf("examples (%d chars): scanner %.1f  dfa %.1f Mchar/s%n", examples.length(),
+                    rate(examples, false, 20_000), rate(examples, true, 20_000));
+            out.printf("synthetic %d MB: scanner %.1f  dfa %.1f Mchar/s%n", megabytes,
+                    rate(synthetic, false, 5), rate(synthetic, true, 5));
+        }
+    }
+
+    /**
+     * 合成的输入：带括号的数字运算，夹杂标识符、行注释和字符串
+     */
+    private static String synthetic(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length + 64);
+        while (sb.length() < length) {
+            sb.append('(').append(random.nextInt(1000)).append(" + ").append(random.nextInt(100))
+                    .append(".25) * foo_").append(random.nextInt(50));
+            if (random.nextInt(6) == 0) {
+                sb.append(" // note\n");
+            } else if (random.nextInt(9) == 0) {
+                sb.append(" \"str\\n\" ");
+            } else {
+                sb.append(" - ");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 扫描 reps 次，按最快的一次计算吞吐量
+     *
+     * @return 百万字符每秒
+     */
+    private static double rate(String source, boolean dfa, int reps) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < reps; i++) {
+            long start = System.nanoTime();
+            TokenBuffer tokens = dfa ? new DfaScanner(source).scanBuffer() : new Scanner(source).scanBuffer();
+            best = Math.min(best, System.nanoTime() - start);
+            if (tokens.size() == 0) throw new AssertionError("no tokens");
+        }
+        return source.length() / (best / 1e9) / 1e6;
+    }
+}
@@ -0,0 +1,213 @@
+package com.cheng.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * 词法分析的差分测试
+ * 以 Scanner.scanBuffer 扫描 String 的结果为准，逐字比较其他所有扫描方式得到的 Token 序列和词法错误：
+ * DfaScanner（--dfa）、ParallelScanner（--parallel）、按需拉取的 TokenStream（--stream）、
+ * 在独立线程中扫描的 TokenPipeline（--pipeline）、逐字节扫描 UTF-8（--utf8）、延迟解码的字符视图，
+ * 以及对随机编辑做增量扫描的 IncrementalScanner
+ *
+ * 语料包括 examples/jlox 下的示例、几 MB 的词法杂烩（其中插入很长的块注释和字符串）和大量短小的随机输入。
+ * 没有输入会被跳过：扫描抛出异常时，比较异常的类型和信息
+ *
+ * 用法：java -cp out com.cheng.lox.ScannerDiff [短输入的个数]，有不一致时退出码为 1
+ */
+public final class ScannerDiff {
+    private final List<Check> checks = new ArrayList<>();
+    private int inputs = 0;
+    /**
+     * 基准扫描器抛出异常的次数，正常情况下为 0
+     */
+    private int exceptions = 0;
+    private int mismatches = 0;
+
+    private ScannerDiff() {
+        check("dfa", source -> Corpus.dump(new DfaScanner(source).scanBuffer()));
+        check("parallel", source -> Corpus.dump(ParallelScanner.scan(source)));
+        check("stream", source -> Corpus.dump(new TokenStream(new Scanner(source))));
+        check("stream --dfa", source -> Corpus.dump(new TokenStream(new DfaScanner(source))));
+        check("pipeline", source -> pipeline(new Scanner(source)));
+        check("pipeline --dfa", source -> pipeline(new DfaScanner(source)));
+        check("utf8", source -> Corpus.dump(new Scanner(utf8(source)).scanBuffer()));
+        check("utf8 --dfa", source -> Corpus.dump(new DfaScanner(utf8(source)).scanBuffer()));
+        check("lazy", source -> Corpus.dump(new Scanner(utf8(source).decodeLazily(StandardCharsets.UTF_8)).scanBuffer()));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        ScannerDiff diff = new ScannerDiff();
+
+        for (String source : Corpus.examples()) {
+            diff.compare(source);
+        }
+        for (int seed = 0; seed < 6; seed++) {
+            // 超过 ParallelScanner 的分段长度，才会真正并行扫描
+            diff.compare(Corpus.soup(new Random(seed), 3_000_000 + seed * 997, true));
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            diff.compare(Corpus.soup(random, 10_000, false));
+        }
+        for (int i = 0; i < count; i++) {
+            diff.compare(Corpus.fuzz(random, 16));
+        }
+        int edits = diff.incremental(new Random(7), count / 5);
+
+        for (Check check : diff.checks) {
+            System.out.println(check.name + ": " + check.passed + " ok, " + check.failed + " mismatches");
+        }
+        System.out.println("incremental: " + edits + " edits");
+        System.out.println(diff.inputs + " inputs, " + diff.exceptions + " reference exceptions, "
+                + diff.mismatches + " mismatches");
+        if (diff.mismatches > 0) System.exit(1);
+    }
+
+    private void check(String name, Function<String, String> scan) {
+        checks.add(new Check(name, scan));
+    }
+
+    /**
+     * 用所有扫描方式扫描同一个输入并与基准比较
+     */
+    private void compare(String source) {
+        String expected = Corpus.capture(() -> Corpus.dump(new Scanner(source).scanBuffer()));
+        if (expected.startsWith(Corpus.THREW)) exceptions++;
+        inputs++;
+        for (Check check : checks) {
+            String actual = Corpus.capture(() -> check.scan.apply(source));
+            if (expected.equals(actual)) {
+                check.passed++;
+            } else {
+                check.failed++;
+                mismatch(check.name, source, expected, actual);
+            }
+        }
+    }
+
+    /**
+     * 增量扫描：对随机源代码连续做随机编辑，每次编辑后与重新扫描整个源代码的结果比较
+     * 除了 Token 内容，还比较每个 Token 在源代码中的位置；只重新扫描了一部分，诊断信息不参与比较
+     *
+     * @param random  随机数
+     * @param sources 源代码的个数，每个源代码编辑 10 次
+     * @return 比较的次数
+     */
+    private int incremental(Random random, int sources) {
+        int edits = 0;
+        for (int i = 0; i < sources; i++) {
+            String source = Corpus.edit(random, random.nextInt(60));
+            TokenBuffer[] scanned = new TokenBuffer[1];
+            String initial = Corpus.capture(() -> positions(scanned[0] = quietly(source)));
+            if (scanned[0] == null) {
+                // 没有可以增量更新的Token序列
+                exceptions++;
+                mismatch("initial scan", source, "", initial);
+                continue;
+            }
+            TokenBuffer tokens = scanned[0];
+            String current = source;
+            for (int e = 0; e < 10; e++) {
+                int offset = random.nextInt(current.length() + 1);
+                int removed = random.nextInt(Math.min(6, current.length() - offset) + 1);
+                String inserted = Corpus.edit(random, random.nextInt(5));
+                String next = current.substring(0, offset) + inserted + current.substring(offset + removed);
+                TokenBuffer previous = tokens;
+                scanned[0] = null;
+                String expected = withoutDiagnostics(Corpus.capture(() -> positions(scanned[0] = quietly(next))));
+                String actual = withoutDiagnostics(Corpus.capture(() ->
+                        positions(IncrementalScanner.relex(previous, next, offset, removed, inserted.length()))));
+                edits++;
+                if (!expected.equals(actual)) {
+                    mismatch("incremental (offset " + offset + ", removed " + removed
+                            + ", inserted " + Corpus.describe(inserted) + ")", current, expected, actual);
+                    break;
+                }
+                if (scanned[0] == null) {
+                    // 两边抛出了相同的异常，没有新的Token序列可以继续编辑
+                    exceptions++;
+                    break;
+                }
+                current = next;
+                tokens = scanned[0];
+            }
+        }
+        return edits;
+    }
+
+    /**
+     * 去掉 Corpus.capture 结果中的诊断信息
+     */
+    private static String withoutDiagnostics(String captured) {
+        return captured.substring(0, captured.indexOf("--- diagnostics\n"));
+    }
+
+    private void mismatch(String name, String source, String expected, String actual) {
+        mismatches++;
+        if (mismatches > 5) return;
+        System.out.println("MISMATCH " + name + " on: " + Corpus.describe(source));
+        if (expected.length() + actual.length() < 4000) {
+            System.out.println("expected:\n" + expected + "actual:\n" + actual);
+        }
+    }
+
+    /**
+     * 通过 TokenPipeline 读到 EOF，关闭后剩余的词法错误才会全部报告
+     */
+    private static String pipeline(Lexer scanner) {
+        TokenPipeline pipeline = new TokenPipeline(scanner);
+        try {
+            return Corpus.dump(pipeline);
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    /**
+     * 扫描源代码，不报告词法错误
+     *
+     * @return Token缓冲区
+     */
+    private static TokenBuffer quietly(String source) {
+        Scanner scanner = new Scanner(source);
+        scanner.deferErrors();
+        return scanner.scanBuffer();
+    }
+
+    /**
+     * Token 序列以及每个 Token 的起始位置和长度
+     */
+    private static String positions(TokenBuffer tokens) {
+        StringBuilder sb = new StringBuilder(Corpus.dump(tokens));
+        for (int i = 0; i < tokens.size(); i++) {
+            sb.append(tokens.start(i)).append(' ').append(tokens.length(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static ByteSource utf8(String source) {
+        return new ByteSource(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 一种扫描方式以及它的比较结果
+     */
+    private static final class Check {
+        final String name;
+        final Function<String, String> scan;
+        int passed = 0;
+        int failed = 0;
+
+        Check(String name, Function<String, String> scan) {
+            this.name = name;
+            this.scan = scan;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.cheng.lox;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Token 序列的内存基准
+ * 扫描同一个生成的脚本，输出扫描结果保留的堆（GC 之后的堆占用之差，不含源代码本身），折算为每个 Token 的字节数：
+ * 原来的 Scanner.addToken 得到的 List&lt;Token&gt;（每个 Token 的原始文本都 substring 一次，这里按 TokenBuffer 还原）、
+ * 现在的 Scanner.scanTokens（运算符和括号共用固定的原始文本）和 TokenBuffer（Scanner.scanBuffer）。
+ * TokenBuffer 的数字包括数组扩容留下的空余和装箱的 Double 字面量
+ *
+ * 用法：java -Xmx2g -cp out com.cheng.lox.TokenHeapBench [脚本大小（MB），默认 40]
+ */
+public final class TokenHeapBench {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private TokenHeapBench() {
+    }
+
+    public static void main(String[] args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        String source = script(new Random(1), megabytes * 1_000_000);
+
+        for (int round = 0; round < 2; round++) {
+            TokenBuffer buffer = new Scanner(source).scanBuffer();
+            List<Token> legacy = substrings(buffer, source);
+            buffer = null;
+            long legacyBytes = retained(legacy);
+
+            long before = usedHeap();
+            List<Token> list = new Scanner(source).scanTokens();
+            long listBytes = usedHeap() - before;
+            int count = list.size();
+            list = null;
+
+            before = usedHeap();
+            buffer = new Scanner(source).scanBuffer();
+            long bufferBytes = usedHeap() - before;
+            if (buffer.size() != count) throw new AssertionError(buffer.size() + " != " + count);
+
+            System.out.printf("%d MB script, %d tokens: substring List<Token> %5.1f  scanTokens %5.1f  "
+                            + "TokenBuffer %5.1f B/token%n", megabytes, count,
+                    legacyBytes / (double) count, listBytes / (double) count, bufferBytes / (double) count);
+        }
+    }
+
+    /**
+     * 按原来的 Scanner.addToken 构造 Token 列表：每个 Token 都有自己的原始文本
+     */
+    private static List<Token> substrings(TokenBuffer buffer, String source) {
+        List<Token> tokens = new ArrayList<>();
+        for (int i = 0; i < buffer.size(); i++) {
+            int start = buffer.start(i);
+            tokens.add(new Token(buffer.type(i), source.substring(start, start + buffer.length(i)),
+                    buffer.literal(i), buffer.line(i)));
+        }
+        return tokens;
+    }
+
+    /**
+     * 列表保留的堆：GC 后释放列表前后的堆占用之差
+     * 列表由 substrings 构造，构造时的 TokenBuffer 已经不再被引用，只剩列表本身
+     */
+    private static long retained(List<Token> tokens) {
+        long with = usedHeap();
+        if (tokens.isEmpty()) throw new AssertionError("no tokens");
+        tokens.clear();
+        ((ArrayList<Token>) tokens).trimToSize();
+        return with - usedHeap();
+    }
+
+    /**
+     * 生成脚本：带括号的数字运算，夹杂标识符、行注释和字符串
+     */
+    private static String script(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length + 64);
+        while (sb.length() < length) {
+            sb.append('(').append(random.nextInt(1000)).append(" + ").append(random.nextInt(100))
+                    .append(".25) * foo_").append(random.nextInt(50));
+            if (random.nextInt(6) == 0) {
+                sb.append(" // note\n");
+            } else if (random.nextInt(9) == 0) {
+                sb.append(" \"str\" ");
+            } else {
+                sb.append(" - ");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,108 @@
+package com.cheng.lox;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * 求值引擎的基准：Interpreter、VM、闭包和 JVM 字节码
+ * 随机生成数字运算、比较和三元表达式，输出每秒的求值次数和每次求值分配的字节数。
+ * vm+compile 和 cl+compile 每次求值前都重新编译，用来衡量编译的开销
+ *
+ * 用法：java -cp out com.cheng.lox.VmBench [深度 个数 重复次数]，默认为 8 2000 100
+ */
+public final class VmBench {
+    private static final String[] OPERATORS = {"+", "-", "*", "/"};
+    private static final String[] NAMES = {"interpreter", "vm", "vm+compile", "closures", "cl+compile", "jit"};
+
+    private VmBench() {
+    }
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int reps = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        Random random = new Random(5);
+        List<Expr> exprs = new ArrayList<>();
+        List<Chunk> chunks = new ArrayList<>();
+        List<Supplier<Object>> closures = new ArrayList<>();
+        List<Supplier<Object>> compiled = new ArrayList<>();
+        long codeBytes = 0;
+        for (int i = 0; i < count; i++) {
+            Expr expr = new Parser(new Scanner(generate(random, depth)).scanBuffer()).parse();
+            exprs.add(expr);
+            Chunk chunk = BytecodeCompiler.compile(expr);
+            chunks.add(chunk);
+            codeBytes += chunk.code.length;
+            closures.add(ClosureCompiler.compile(expr));
+            compiled.add(JvmCompiler.compile(expr));
+        }
+        System.out.println("average code bytes " + codeBytes / count);
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Interpreter interpreter = new Interpreter();
+        VM vm = new VM();
+        double sink = 0;
+        for (int round = 0; round < 8; round++) {
+            for (int which = 0; which < NAMES.length; which++) {
+                long allocated = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                int evals = 0;
+                for (int k = 0; k < reps; k++) {
+                    for (int i = 0; i < count; i++) {
+                        Object value;
+                        switch (which) {
+                            case 0:
+                                value = interpreter.evaluate(exprs.get(i));
+                                break;
+                            case 1:
+                                value = vm.run(chunks.get(i));
+                                break;
+                            case 2:
+                                value = vm.interpret(exprs.get(i));
+                                break;
+                            case 3:
+                                value = closures.get(i).get();
+                                break;
+                            case 4:
+                                value = ClosureCompiler.compile(exprs.get(i)).get();
+                                break;
+                            default:
+                                value = compiled.get(i).get();
+                                break;
+                        }
+                        sink += (Double) value;
+                        evals++;
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                long bytes = threads.getThreadAllocatedBytes(thread) - allocated;
+                // 前几轮是预热
+                if (round < 5) continue;
+                System.out.printf("%-12s %9.0f evals/s %8.1f B/eval%n",
+                        NAMES[which], evals / (nanos / 1e9), bytes / (double) evals);
+            }
+        }
+        System.out.println("checksum " + sink);
+    }
+
+    /**
+     * 随机表达式：四则运算，约十分之一的节点是以比较为条件的三元表达式
+     */
+    private static String generate(Random random, int depth) {
+        if (depth <= 0 || random.nextInt(6) == 0) return String.valueOf(1 + random.nextInt(9));
+        if (random.nextInt(10) == 0) {
+            return "(" + generate(random, depth - 1) + " < " + generate(random, depth - 1) + " ? "
+                    + generate(random, depth - 1) + " : " + generate(random, depth - 1) + ")";
+        }
+        String expr = generate(random, depth - 1) + " " + OPERATORS[random.nextInt(OPERATORS.length)] + " "
+                + generate(random, depth - 1);
+        return random.nextInt(3) == 0 ? "(" + expr + ")" : expr;
+    }
+}